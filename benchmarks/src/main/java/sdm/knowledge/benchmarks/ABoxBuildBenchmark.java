@@ -0,0 +1,59 @@
+package sdm.knowledge.benchmarks;
+
+import com.opencsv.exceptions.CsvValidationException;
+import org.apache.jena.ontology.OntModel;
+import org.apache.jena.ontology.OntModelSpec;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.openjdk.jmh.annotations.*;
+import sdm.knowledge.ABox;
+import sdm.knowledge.TBox;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+// Compares a whole build with the OntModel builder of ABox against the prepared-vocabulary builder writing into
+// a plain graph. Both read the TBox from a file written in the setup and return the number of triples built.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ABoxBuildBenchmark {
+    @Param({"250", "1000", Dataset.ALL})
+    public String papers;
+
+    private String folder;
+    private String tboxPath;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, CsvValidationException {
+        folder = Dataset.of(papers);
+        OntModel tbox = TBox.createBaseModel();
+        TBox.extendModel(tbox);
+        File file = File.createTempFile("kg-tbox", ".ttl");
+        file.deleteOnExit();
+        try (OutputStream out = new FileOutputStream(file)) {
+            RDFDataMgr.write(out, tbox.getBaseModel(), Lang.TURTLE);
+        }
+        tboxPath = file.getPath();
+    }
+
+    @Benchmark
+    public long ontModel() throws IOException, CsvValidationException {
+        OntModel model = ModelFactory.createOntologyModel(OntModelSpec.OWL_DL_MEM);
+        RDFDataMgr.read(model, tboxPath);
+        new ABox(model).populateModel(folder);
+        return model.getGraph().size();
+    }
+
+    @Benchmark
+    public long fastPath() throws IOException, CsvValidationException {
+        return ABox.populateGraph(tboxPath, folder, 1, 0).size();
+    }
+}
@@ -0,0 +1,107 @@
+package sdm.knowledge.benchmarks;
+
+import com.opencsv.exceptions.CsvValidationException;
+import org.apache.jena.ontology.OntModel;
+import org.apache.jena.ontology.OntModelSpec;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.openjdk.jmh.annotations.*;
+import sdm.knowledge.ABox;
+import sdm.knowledge.TBox;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Every stage of ABox.populateModel is measured on its own. The stages before it run in the per-invocation
+// setup, on a fresh copy of the TBox, so they are not part of the measured time.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ABoxStageBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Data {
+        @Param({"250", "1000", Dataset.ALL})
+        public String papers;
+
+        public String folder;
+        public OntModel tbox;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException, CsvValidationException {
+            folder = Dataset.of(papers);
+            tbox = TBox.createBaseModel();
+            TBox.extendModel(tbox);
+        }
+    }
+
+    // Number of stages that have to run before the measured one
+    public abstract static class Stage {
+        public ABox abox;
+
+        abstract int before();
+
+        @Setup(Level.Invocation)
+        public void setup(Data data) throws IOException, CsvValidationException {
+            OntModel model = ModelFactory.createOntologyModel(OntModelSpec.OWL_DL_MEM);
+            model.add(data.tbox.getBaseModel());
+            abox = new ABox(model);
+            if (before() > 0) abox.populatePapers(data.folder);
+            if (before() > 1) abox.populateCitations(data.folder);
+            if (before() > 2) abox.populateRevisions(data.folder);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Papers extends Stage {
+        int before() {
+            return 0;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Citations extends Stage {
+        int before() {
+            return 1;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Revisions extends Stage {
+        int before() {
+            return 2;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Reviewers extends Stage {
+        int before() {
+            return 3;
+        }
+    }
+
+    @Benchmark
+    public ABox papersAndVenues(Data data, Papers stage) throws IOException, CsvValidationException {
+        stage.abox.populatePapers(data.folder);
+        return stage.abox;
+    }
+
+    @Benchmark
+    public ABox citations(Data data, Citations stage) throws IOException, CsvValidationException {
+        stage.abox.populateCitations(data.folder);
+        return stage.abox;
+    }
+
+    @Benchmark
+    public ABox revisions(Data data, Revisions stage) throws IOException, CsvValidationException {
+        stage.abox.populateRevisions(data.folder);
+        return stage.abox;
+    }
+
+    @Benchmark
+    public ABox reviewers(Data data, Reviewers stage) throws IOException, CsvValidationException {
+        stage.abox.populateReviewers(data.folder);
+        return stage.abox;
+    }
+}
@@ -0,0 +1,32 @@
+package sdm.knowledge.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Runs JMH with the usual command line options, adding the GC profiler (allocation rate per operation) and
+// a JSON result file (jmh-result.json) so runs can be compared against each other. -Dkg.resources and
+// -Dkg.starting-data given to this JVM are passed on to the forked ones, see Dataset.
+public class BenchmarkMain {
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions options = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(options);
+        if (options.getProfilers().isEmpty()) {
+            builder.addProfiler(GCProfiler.class);
+        }
+        if (!options.getResultFormat().hasValue()) {
+            builder.resultFormat(ResultFormatType.JSON);
+        }
+        for (String property : new String[]{"kg.resources", "kg.starting-data"}) {
+            if (System.getProperty(property) != null) {
+                builder.jvmArgsAppend("-D" + property + "=" + System.getProperty(property));
+            }
+        }
+        new Runner(builder).run();
+    }
+}
@@ -0,0 +1,155 @@
+package sdm.knowledge.benchmarks;
+
+import com.opencsv.CSVReader;
+import com.opencsv.CSVWriter;
+import com.opencsv.exceptions.CsvValidationException;
+import sdm.knowledge.ABoxSource;
+import sdm.knowledge.StartingData;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+// Builds resource folders with the first n papers of data.csv and the citations, reviews and reviewers of those
+// papers, so the benchmarks can run on several sizes of the same data. By default the data is the starting_data
+// extract of the repository (../starting_data/, or the kg.starting-data system property), joined once per JVM
+// by StartingData into the four csvs; it has no citations. The kg.resources system property gives a folder
+// with the four csvs to use instead, e.g. a full Scopus export.
+public class Dataset {
+    public static final String ALL = "all";
+
+    private static final String[] PAPER_COLUMNS = {"Authors", "Author(s) ID", "Title", "Year", "Source title", "Volume",
+            "DOI", "Abstract", "Index Keywords", "Document Type"};
+    private static final String[] CITATION_COLUMNS = {"Paper", "Citation"};
+    private static final String[] REVIEW_COLUMNS = {"Paper", "Reviewer", "Decision", "Review"};
+    private static final String[] REVIEWER_COLUMNS = {"Paper", "Reviewers"};
+
+    private static String startingData;
+
+    // The folder (ending in /) with the four csvs all sizes are cut from
+    public static String resources() throws IOException, CsvValidationException {
+        String resources = System.getProperty("kg.resources");
+        if (resources == null) {
+            return startingData();
+        }
+        resources = resources.endsWith("/") ? resources : resources + "/";
+        if (!new File(resources + "data.csv").exists()) {
+            throw new IllegalStateException("No data.csv in " + resources + ", set -Dkg.resources to the folder with the ABox csvs");
+        }
+        return resources;
+    }
+
+    // Path of a folder (ending in /) with the requested number of papers, or the source folder for "all"
+    public static String of(String size) throws IOException, CsvValidationException {
+        String source = resources();
+        if (size.equals(ALL)) {
+            return source;
+        }
+
+        int papers = Integer.parseInt(size);
+        File folder = Files.createTempDirectory("kg-dataset-" + papers).toFile();
+        folder.deleteOnExit();
+
+        Set<String> dois = new HashSet<>();
+        Set<String> authors = new HashSet<>();
+        int doi = column(source + "data.csv", "DOI");
+        int authorIds = column(source + "data.csv", "Author(s) ID");
+        copy(source + "data.csv", folder, "data.csv", row -> {
+            if (dois.size() == papers || !dois.add(row[doi])) return null;
+            authors.addAll(Arrays.asList(row[authorIds].split(";")));
+            return row;
+        });
+
+        int citing = column(source + "citations.csv", "Paper");
+        int cited = column(source + "citations.csv", "Citation");
+        copy(source + "citations.csv", folder, "citations.csv", row -> dois.contains(row[citing]) && dois.contains(row[cited]) ? row : null);
+        int reviewed = column(source + "reviews.csv", "Paper");
+        copy(source + "reviews.csv", folder, "reviews.csv", row -> dois.contains(row[reviewed]) ? row : null);
+
+        // Reviewers have to be authors of one of the kept papers
+        int assigned = column(source + "reviewers.csv", "Paper");
+        int reviewers = column(source + "reviewers.csv", "Reviewers");
+        copy(source + "reviewers.csv", folder, "reviewers.csv", row -> {
+            if (!dois.contains(row[assigned])) return null;
+            String kept = Arrays.stream(row[reviewers].split(";")).filter(authors::contains).collect(Collectors.joining(";"));
+            if (kept.isEmpty()) return null;
+            row[reviewers] = kept;
+            return row;
+        });
+
+        return folder.getPath() + "/";
+    }
+
+    private static synchronized String startingData() throws IOException, CsvValidationException {
+        if (startingData != null) {
+            return startingData;
+        }
+        String source = System.getProperty("kg.starting-data", "../starting_data/");
+        if (!new File(source, "papers.csv").exists()) {
+            throw new IllegalStateException("No papers.csv in " + source + ", set -Dkg.starting-data to the starting_data folder"
+                    + " or -Dkg.resources to a folder with the ABox csvs");
+        }
+        StartingData data = new StartingData(source, Runtime.getRuntime().availableProcessors());
+        File folder = Files.createTempDirectory("kg-starting-data").toFile();
+        folder.deleteOnExit();
+        write(data.papers(), folder, "data.csv", PAPER_COLUMNS);
+        write(data.citations(), folder, "citations.csv", CITATION_COLUMNS);
+        write(data.reviews(), folder, "reviews.csv", REVIEW_COLUMNS);
+        write(data.reviewers(), folder, "reviewers.csv", REVIEWER_COLUMNS);
+        startingData = folder.getPath() + "/";
+        return startingData;
+    }
+
+    private static void write(ABoxSource.Rows rows, File folder, String name, String[] columns) throws IOException, CsvValidationException {
+        File target = new File(folder, name);
+        target.deleteOnExit();
+        try (CSVWriter writer = new CSVWriter(new FileWriter(target))) {
+            writer.writeNext(columns);
+            Map<String, String> values;
+            while ((values = rows.next()) != null) {
+                String[] row = new String[columns.length];
+                for (int i = 0; i < columns.length; i++) {
+                    row[i] = values.get(columns[i]);
+                }
+                writer.writeNext(row);
+            }
+        }
+    }
+
+    // Returns the row to write, possibly changed, or null to drop it
+    private interface RowFilter {
+        String[] apply(String[] row);
+    }
+
+    private static int column(String file, String name) throws IOException, CsvValidationException {
+        try (CSVReader reader = new CSVReader(new FileReader(file))) {
+            String[] header = reader.readNext();
+            for (int i = 0; i < header.length; i++) {
+                if (header[i].equals(name)) return i;
+            }
+        }
+        throw new IllegalArgumentException("No column " + name + " in " + file);
+    }
+
+    private static void copy(String file, File folder, String name, RowFilter filter) throws IOException, CsvValidationException {
+        File target = new File(folder, name);
+        target.deleteOnExit();
+        try (CSVReader reader = new CSVReader(new FileReader(file)); CSVWriter writer = new CSVWriter(new FileWriter(target))) {
+            writer.writeNext(reader.readNext());
+            String[] row;
+            while ((row = reader.readNext()) != null) {
+                row = filter.apply(row);
+                if (row != null) {
+                    writer.writeNext(row);
+                }
+            }
+        }
+    }
+}
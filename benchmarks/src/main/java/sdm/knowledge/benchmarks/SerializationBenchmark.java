@@ -0,0 +1,72 @@
+package sdm.knowledge.benchmarks;
+
+import com.opencsv.exceptions.CsvValidationException;
+import org.apache.jena.ontology.OntModel;
+import org.apache.jena.ontology.OntModelSpec;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFFormat;
+import org.openjdk.jmh.annotations.*;
+import sdm.knowledge.ABox;
+import sdm.knowledge.TBox;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+// Measures RDFDataMgr.write of the populated model into a stream that only counts bytes
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializationBenchmark {
+    @Param({"250", "1000", Dataset.ALL})
+    public String papers;
+
+    @Param({"turtle", "turtle-blocks", "ntriples", "thrift"})
+    public String format;
+
+    private OntModel model;
+    private RDFFormat rdfFormat;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, CsvValidationException {
+        model = ModelFactory.createOntologyModel(OntModelSpec.OWL_DL_MEM);
+        OntModel tbox = TBox.createBaseModel();
+        TBox.extendModel(tbox);
+        model.add(tbox.getBaseModel());
+        model.setNsPrefixes(tbox.getNsPrefixMap());
+        new ABox(model).populateModel(Dataset.of(papers));
+
+        switch (format) {
+            case "turtle": rdfFormat = RDFFormat.TURTLE; break;
+            case "turtle-blocks": rdfFormat = RDFFormat.TURTLE_BLOCKS; break;
+            case "ntriples": rdfFormat = RDFFormat.NTRIPLES; break;
+            case "thrift": rdfFormat = RDFFormat.RDF_THRIFT; break;
+            default: throw new IllegalArgumentException("Unknown format " + format);
+        }
+    }
+
+    @Benchmark
+    public long write() {
+        CountingOutputStream out = new CountingOutputStream();
+        RDFDataMgr.write(out, model, rdfFormat);
+        return out.count;
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        long count = 0;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package sdm.knowledge.benchmarks;
+
+import org.apache.jena.ontology.OntModel;
+import org.openjdk.jmh.annotations.*;
+import sdm.knowledge.TBox;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TBoxBenchmark {
+
+    @Benchmark
+    public OntModel createTBox() {
+        OntModel m = TBox.createBaseModel();
+        TBox.extendModel(m);
+        return m;
+    }
+}
@@ -1,25 +1,36 @@
 package sdm.knowledge;
 
 
-import com.opencsv.CSVReaderHeaderAware;
 import com.opencsv.exceptions.CsvValidationException;
+import org.apache.jena.datatypes.RDFDatatype;
 import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Triple;
 import org.apache.jena.ontology.*;
+import org.apache.jena.rdf.model.Literal;
 import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.riot.RDFDataMgr;
-import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.riot.system.StreamRDFWrapper;
+import org.apache.jena.sparql.graph.GraphFactory;
 import org.jetbrains.annotations.NotNull;
 
-import java.io.FileOutputStream;
-import java.io.FileReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.*;
 
 
 public class ABox {
-    private static final Random random = new Random();
+    private static final String BARCELONA = TBox.DBPO + "Barcelona";
 
     private final OntModel model;
     private final Map<String, Integer> counters = new HashMap<>();
@@ -29,11 +40,37 @@ public class ABox {
     private final Map<String, Individual> paperSubmissions = new HashMap<>();
     private final Map<String, Individual> paperRevisions = new HashMap<>();
     private final Map<String, Individual> fields = new HashMap<>();
+    // Side indexes filled while the papers are added, so the revisions and reviewers passes do not read the
+    // model back
+    private final Map<String, Individual> venues = new HashMap<>();
+    private final Map<Individual, List<Individual>> venueHandlers = new HashMap<>();
+    private final Map<Individual, Individual> submissionVenues = new HashMap<>();
+    private final Map<Individual, String> submissionYears = new HashMap<>();
+    private final Map<String, Individual> authorIndividuals = new HashMap<>();
+    private final Map<String, Integer> paperRows = new HashMap<>();
+    private long unresolvedCitations = 0;
+    private long unresolvedReviewers = 0;
+    private PipelineMetrics metrics = new PipelineMetrics();
+    private long seed = 0;
+    private final CsvReader.Splitter authors = new CsvReader.Splitter(", ");
+    private final CsvReader.Splitter authorIds = new CsvReader.Splitter(";");
+    private final CsvReader.Splitter keywords = new CsvReader.Splitter("; ");
+    private final CsvReader.Splitter reviewers = new CsvReader.Splitter(";");
+    private final NodeCache nodes = new NodeCache(NodeCache.DEFAULT_SIZE);
 
     public ABox(OntModel model) {
         this.model = model;
     }
 
+    // Seed of the paper and venue subclasses and of the handler assigned to every revision
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     public static void main(String[] args) throws IOException, CsvValidationException {
         if (args.length < 3) {
             System.out.println("Invalid arguments");
@@ -44,27 +81,403 @@ public class ABox {
             System.out.println("\t                     ./src/main/resources/");
             System.out.println("\t <output path>:      path to file where the ABOX triples will be saved to.");
             System.out.println("\t                     ./src/main/resources/abox.ttl");
+            System.out.println("\t --format=<format>:  turtle, turtle-blocks, ntriples, thrift or protobuf. By default taken from the");
+            System.out.println("\t                     extension of <output path> (.ttl, .nt, .trdf, .rpb). A trailing .gz or .zst compresses it.");
+            System.out.println("\t --stream:           write triples while the csvs are read instead of building the whole model in memory.");
+            System.out.println("\t                     Pretty Turtle is written as Turtle blocks in this mode.");
+            System.out.println("\t --threads=<n>:      build chunks of rows on <n> threads and merge them (default 1).");
+            System.out.println("\t --chunk=<rows>:     rows per chunk when --threads is greater than 1 (default 10000).");
+            System.out.println("\t --fast:             build into a plain in-memory graph instead of an OWL_DL OntModel.");
+            System.out.println("\t --tdb2:             bulk load the TBOX and ABOX into the TDB2 database directory <output path>.");
+            System.out.println("\t --loader=<loader>:  TDB2 loader: parallel, phased, sequential or basic (default parallel).");
+            System.out.println("\t --batch=<triples>:  commit the TDB2 load every <triples> triples instead of in one transaction.");
+            System.out.println("\t                     With --graphdb, triples per commit (default 100000).");
+            System.out.println("\t --graphdb=<id>:     load the TBOX and ABOX into repository <id> of an embedded GraphDB whose base");
+            System.out.println("\t                     directory is <output path>. The repository is created if it does not exist.");
+            System.out.println("\t --repository-config=<path>: repository configuration to create it with (default graphdb-repository.ttl).");
+            System.out.println("\t --ruleset=<name>:   GraphDB ruleset of a new repository (default empty).");
+            System.out.println("\t --converters=<n>:   threads converting triples to GraphDB statements (default: available processors).");
+            System.out.println("\t --state=<path>:     file with the identifiers of a previous run. If it exists only the rows that run did not");
+            System.out.println("\t                     see are generated (without the TBOX) and the citations and reviewers it could not link yet are");
+            System.out.println("\t                     retried; it is rewritten at the end. Needs --stream, --tdb2 or --graphdb.");
+            System.out.println("\t --spill-citations=<records>: link citations with an external sort-merge join that writes sorted runs of");
+            System.out.println("\t                     <records> records to the spill directory and merges at most " + ExternalSorter.FAN_IN + " of them at once.");
+            System.out.println("\t                     With --stream, --tdb2 or --graphdb, not with --state.");
+            System.out.println("\t --spill-dir=<dir>:  directory of the sorted runs of --spill-citations, created if missing (default java.io.tmpdir).");
+            System.out.println("\t --starting-data:    <resources path> is the starting_data folder (papers.csv, paper_author.csv, ...). Its");
+            System.out.println("\t                     tables are joined in memory into the rows of data.csv, reviews.csv and reviewers.csv.");
+            System.out.println("\t --scale=<n>:        build from <n> seeded synthetic copies of the input instead, see SyntheticData.");
+            System.out.println("\t --seed=<n>:         seed of the generated classes and handlers, and of --scale (default 0). The same seed");
+            System.out.println("\t                     and input give the same ABOX. When continuing from --state, the seed of the state is used.");
+            System.out.println("\t --metrics=<path>:   write a JSON report with the time, rows, triples, heap and GC of every stage to <path>.");
+            System.out.println("\t --progress=<s>:     print the progress of the current stage every <s> seconds.");
+            System.out.println("\t --materialize:      add the triples inferred from the TBOX inverses, hierarchies, domains and ranges before");
+            System.out.println("\t                     writing, so the output can be queried without a reasoner. Not with --stream, --tdb2 or --graphdb.");
+            System.out.println("\t --profile=<p>:      reasoning profile of the written model: none, materialized, transitive, rdfs, owl-micro,");
+            System.out.println("\t                     owl-mini or owl-full (default none). Other than none, the inferred triples are written too.");
+            System.out.println("\t                     Not with --stream, --tdb2, --graphdb or --fast.");
+            System.out.println("\t --validate=<path>:  check the ABOX against the cardinality and allValuesFrom restrictions of the TBOX before");
+            System.out.println("\t                     writing it and write the violations to <path>, see Validator. Not with --stream, --tdb2 or --graphdb.");
+            System.out.println("\t --text-index=<dir>: build a Lucene index of the titles, abstracts, review texts, keywords, venue and author");
+            System.out.println("\t                     names into <dir> for text:query, see TextIndex. Not with --stream, --tdb2 or --graphdb.");
+            System.out.println("\t --shards=<n>:       write <n> files at once, <output path> with the shard before the extension, and a");
+            System.out.println("\t                     <output path>.manifest.json listing them. Not with --tdb2 or --graphdb.");
+            System.out.println("\t --partition=<p>:    hash: by the hash of the subject (default); class: one shard per TBOX class group (papers,");
+            System.out.println("\t                     submissions, revisions, academics, venues, fields, other). class is not with --stream.");
+            System.out.println("\t --analytics:        add the PageRank, citation counts, h-indexes, co-author components and venue impact of");
+            System.out.println("\t                     GraphAnalytics as datatype properties. Not with --stream, --tdb2 or --graphdb.");
         }
         String modelFilePath = args[0];
         String dataFolder = args[1];
         String outputPath = args[2];
+        Options options = new Options(args, 3);
+        int threads = options.getInt("threads", 1);
+        int chunkSize = options.getInt("chunk", 10000);
+        int seed = options.getInt("seed", 0);
+        OutputFormat format = OutputFormat.of(outputPath, options.get("format", null));
+
+        String statePath = options.get("state", null);
+        boolean incremental = statePath != null && new File(statePath).exists();
+        ABoxState state = incremental ? ABoxState.load(statePath) : new ABoxState(seed);
+        int citationRun = options.getInt("spill-citations", 0);
+        File spillDirectory = new File(options.get("spill-dir", System.getProperty("java.io.tmpdir")));
+        if (statePath != null && citationRun > 0) {
+            // The external join does not keep the citations it cannot link for a later run
+            throw new IllegalArgumentException("--spill-citations is not with --state");
+        }
+        requireGraph(options, "materialize");
+        requireGraph(options, "profile");
+        requireGraph(options, "validate");
+        requireGraph(options, "text-index");
+        requireGraph(options, "analytics");
+        if (options.has("profile") && options.has("fast")) {
+            // The plain graph of --fast has no reasoner to put over it
+            throw new IllegalArgumentException("--profile is not with --fast");
+        }
+        PipelineMetrics metrics = new PipelineMetrics();
+        if (options.has("progress")) {
+            metrics.startProgress(options.getInt("progress", 10));
+        }
+        ABoxSource input = options.has("starting-data") ? new StartingData(dataFolder, Runtime.getRuntime().availableProcessors()) : ABoxSource.csv(dataFolder);
+        ABoxSource source = options.has("scale") ? new SyntheticData(input, options.getInt("scale", 1), seed) : input;
+        Populator populator = sink -> populateStream(modelFilePath, source, sink, state, incremental, threads, chunkSize, citationRun,
+                spillDirectory, metrics);
+
+        if (options.has("stream") || options.has("graphdb") || options.has("tdb2")) {
+            if (options.has("stream") && options.has("shards")) {
+                streamSharded(outputPath, format, options.getInt("shards", Runtime.getRuntime().availableProcessors()),
+                        ShardedWriter.partition(options.get("partition", "hash")), populator);
+            } else if (options.has("stream")) {
+                stream(outputPath, format, populator);
+            } else if (options.has("graphdb")) {
+                try (GraphDBLoader loader = new GraphDBLoader(outputPath, options.get("graphdb", "kg"), options.get("repository-config", null),
+                        options.get("ruleset", "empty"), options.getInt("batch", 100000),
+                        options.getInt("converters", Runtime.getRuntime().availableProcessors()))) {
+                    loadGraphDB(loader, populator);
+                }
+            } else {
+                TDB2Loader loader = new TDB2Loader(outputPath, options.get("loader", "parallel"), options.getInt("batch", 0), options.has("verbose"));
+                loadTDB2(loader, populator);
+            }
+            if (statePath != null) {
+                state.save(statePath);
+            }
+            finish(metrics, options);
+            return;
+        }
+        if (statePath != null) {
+            throw new IllegalArgumentException("--state needs --stream, --tdb2 or --graphdb");
+        }
+
+        if (options.has("fast")) {
+            Graph graph = populateGraph(modelFilePath, source, seed, threads, chunkSize, metrics);
+            if (options.has("materialize")) {
+                materialize(graph, threads, chunkSize, metrics);
+            }
+            if (options.has("analytics")) {
+                analyze(graph, threads, metrics);
+            }
+            if (options.has("validate")) {
+                validate(graph, options.get("validate", null), threads, chunkSize, metrics);
+            }
+            if (options.has("text-index")) {
+                TextIndex.build(graph, options.get("text-index", null), threads, metrics);
+            }
+            write(outputPath, format, graph, metrics, options);
+            finish(metrics, options);
+            return;
+        }
 
-        OntModel model = ModelFactory.createOntologyModel(OntModelSpec.OWL_DL_MEM);
+        metrics.start("tbox");
+        OntModel model = ModelFactory.createOntologyModel(ReasoningProfile.NONE.getSpec());
         RDFDataMgr.read(model, modelFilePath);
+        metrics.end(model.getBaseModel().getGraph().size());
 
 
         ABox abox = new ABox(model);
-        abox.populateModel(dataFolder);
+        abox.setMetrics(metrics);
+        abox.setSeed(seed);
+        if (threads > 1) {
+            abox.populateModelParallel(source, threads, chunkSize);
+        } else {
+            abox.populateModel(source);
+        }
+        if (options.has("materialize")) {
+            materialize(model.getBaseModel().getGraph(), threads, chunkSize, metrics);
+        }
+        if (options.has("analytics")) {
+            analyze(model.getBaseModel().getGraph(), threads, metrics);
+        }
+        if (options.has("validate")) {
+            validate(model.getBaseModel().getGraph(), options.get("validate", null), threads, chunkSize, metrics);
+        }
+        if (options.has("text-index")) {
+            TextIndex.build(model.getBaseModel().getGraph(), options.get("text-index", null), threads, metrics);
+        }
+        ReasoningProfile profile = ReasoningProfile.of(options.get("profile", "none"));
+        if (profile != ReasoningProfile.NONE) {
+            // The model is built without inference, which would be recomputed on every lookup of the build
+            metrics.start("reasoning");
+            model = profile.over(model.getBaseModel(), threads);
+            model.prepare();
+            metrics.end(0);
+        }
+
+        write(outputPath, format, model.getGraph(), metrics, options);
+        finish(metrics, options);
+    }
+
+    // Options that work on the whole graph once it is built, which --stream, --tdb2 and --graphdb never hold
+    private static void requireGraph(Options options, String option) {
+        if (options.has(option) && (options.has("stream") || options.has("tdb2") || options.has("graphdb"))) {
+            throw new IllegalArgumentException("--" + option + " is not with --stream, --tdb2 or --graphdb");
+        }
+    }
+
+    private static void materialize(Graph graph, int threads, int chunkSize, PipelineMetrics metrics) {
+        Materializer materializer = new Materializer(graph, threads, chunkSize * 10);
+        materializer.setMetrics(metrics);
+        materializer.materialize(graph);
+    }
+
+    private static void analyze(Graph graph, int threads, PipelineMetrics metrics) {
+        GraphAnalytics analytics = new GraphAnalytics(threads);
+        analytics.setMetrics(metrics);
+        analytics.run(graph, 50);
+        analytics.addTo(graph);
+    }
+
+    // The graph holds the TBOX too, so it is its own schema
+    private static void validate(Graph graph, String violationsPath, int threads, int chunkSize, PipelineMetrics metrics) throws IOException {
+        Validator validator = new Validator(graph, graph, threads, chunkSize);
+        validator.setMetrics(metrics);
+        try (Writer out = new BufferedWriter(new FileWriter(violationsPath, StandardCharsets.UTF_8))) {
+            validator.validate(out);
+        }
+        validator.printSummary();
+    }
+
+    private static void write(String outputPath, OutputFormat format, Graph graph, PipelineMetrics metrics, Options options) throws IOException {
+        metrics.start("write");
+        if (options.has("shards")) {
+            ShardedWriter.write(outputPath, format, graph, options.getInt("shards", Runtime.getRuntime().availableProcessors()),
+                    ShardedWriter.partition(options.get("partition", "hash")));
+        } else {
+            format.write(outputPath, graph);
+            metrics.set("output_bytes", new File(outputPath).length());
+        }
+        metrics.end(graph.size());
+    }
+
+    private static void finish(PipelineMetrics metrics, Options options) throws IOException {
+        metrics.stopProgress();
+        if (options.has("metrics")) {
+            metrics.write(options.get("metrics", null));
+        }
+    }
+
+    private interface Populator {
+        void populate(StreamRDF sink) throws IOException, CsvValidationException;
+    }
+
+    private static void stream(String outputPath, OutputFormat format, Populator populator) throws IOException, CsvValidationException {
+        try (OutputStream output = format.open(outputPath)) {
+            StreamRDF writer = format.stream(output);
+            writer.start();
+            writer.prefix("fd", TBox.NS);
+            writer.prefix("dbpo", TBox.DBPO);
+            populator.populate(writer);
+            writer.finish();
+        }
+    }
+
+    private static void streamSharded(String outputPath, OutputFormat format, int shards, ShardedWriter.Partition partition,
+                                      Populator populator) throws IOException, CsvValidationException {
+        if (partition == ShardedWriter.Partition.CLASS) {
+            throw new IllegalArgumentException("--partition=class needs the whole graph, it is not with --stream");
+        }
+        ShardedWriter writer = new ShardedWriter(outputPath, format, shards, partition, null);
+        writer.start();
+        writer.prefix("fd", TBox.NS);
+        writer.prefix("dbpo", TBox.DBPO);
+        populator.populate(writer);
+        writer.finish();
+    }
 
-        FileOutputStream output = new FileOutputStream(outputPath);
-        RDFDataMgr.write(output, model, RDFFormat.TURTLE);
+    private static void loadTDB2(TDB2Loader loader, Populator populator) throws IOException, CsvValidationException {
+        long start = System.nanoTime();
+        StreamRDF sink = loader.stream();
+        sink.start();
+        try {
+            populator.populate(sink);
+        } catch (IOException | CsvValidationException | RuntimeException e) {
+            loader.abort(e);
+            throw e;
+        }
+        sink.finish();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Loaded %d triples in %.1fs (%.0f triples/s)%n", loader.getLoaded(), seconds, loader.getLoaded() / seconds);
+    }
+
+    private static void loadGraphDB(GraphDBLoader loader, Populator populator) throws IOException, CsvValidationException {
+        long start = System.nanoTime();
+        StreamRDF sink = loader.stream();
+        sink.start();
+        populator.populate(sink);
+        sink.finish();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Loaded %d statements in %d batches in %.1fs (%.0f statements/s, %.1fs committing)%n",
+                loader.getLoaded(), loader.getBatches(), seconds, loader.getLoaded() / seconds, loader.getCommitSeconds());
+    }
+
+    // Sends the TBOX and then the generated ABOX to an already started stream, or only the new part of the
+    // ABOX when continuing from a saved state
+    private static void populateStream(String modelFilePath, ABoxSource source, StreamRDF sink, ABoxState state, boolean incremental,
+                                       int threads, int chunkSize, int citationRun, File spillDirectory, PipelineMetrics metrics)
+            throws IOException, CsvValidationException {
+        if (incremental) {
+            metrics.start("incremental");
+            Vocabulary vocabulary = new Vocabulary();
+            new IncrementalABox(sink, state, vocabulary).populate(source);
+            metrics.end(0);
+            metrics.entities(state.counters);
+            vocabulary.nodes.report(metrics);
+            return;
+        }
+
+        metrics.start("tbox");
+        // The parser starts and finishes its destination, which would end the output early
+        RDFParser.source(modelFilePath).parse(new StreamRDFWrapper(sink) {
+            @Override
+            public void start() {
+            }
+
+            @Override
+            public void finish() {
+            }
+
+            @Override
+            public void triple(Triple triple) {
+                super.triple(triple);
+                metrics.triple();
+            }
+        });
+
+        if (citationRun > 0) {
+            Files.createDirectories(spillDirectory.toPath());
+        }
+        Vocabulary vocabulary = new Vocabulary();
+        try (CitationJoin citationJoin = citationRun > 0
+                ? new CitationJoin(sink, vocabulary, citationRun, spillDirectory) : null) {
+            if (threads > 1) {
+                ParallelABox abox = new ParallelABox(sink, state, vocabulary, threads, chunkSize);
+                abox.setCitationJoin(citationJoin);
+                abox.setMetrics(metrics);
+                abox.populate(source);
+            } else {
+                StreamingABox abox = new StreamingABox(sink, state, vocabulary);
+                abox.setCitationJoin(citationJoin);
+                abox.setMetrics(metrics);
+                abox.populate(source);
+            }
+        }
+    }
+
+    public static Graph populateGraph(String modelFilePath, String dataFolder, int threads, int chunkSize) throws IOException, CsvValidationException {
+        return populateGraph(modelFilePath, dataFolder, threads, chunkSize, new PipelineMetrics());
+    }
+
+    public static Graph populateGraph(String modelFilePath, String dataFolder, int threads, int chunkSize, PipelineMetrics metrics) throws IOException, CsvValidationException {
+        return populateGraph(modelFilePath, ABoxSource.csv(dataFolder), 0, threads, chunkSize, metrics);
+    }
+
+    public static Graph populateGraph(String modelFilePath, ABoxSource source, long seed, int threads, int chunkSize, PipelineMetrics metrics) throws IOException, CsvValidationException {
+        metrics.start("tbox");
+        Graph graph = GraphFactory.createGraphMem();
+        RDFDataMgr.read(graph, modelFilePath);
+        Vocabulary vocabulary = new Vocabulary(graph);
+        metrics.end(graph.size());
+
+        StreamRDF sink = StreamRDFLib.graph(graph);
+        if (threads > 1) {
+            ParallelABox abox = new ParallelABox(sink, new ABoxState(seed), vocabulary, threads, chunkSize);
+            abox.setMetrics(metrics);
+            abox.populate(source);
+        } else {
+            StreamingABox abox = new StreamingABox(sink, new ABoxState(seed), vocabulary);
+            abox.setMetrics(metrics);
+            abox.populate(source);
+        }
+        return graph;
+    }
+
+    // Rows are built into per-thread graphs and merged into the model on this thread, since OntModel is not
+    // thread safe. Uses the identifiers of StreamingABox rather than this instance's maps.
+    public void populateModelParallel(String dataPath, int threads, int chunkSize) throws IOException, CsvValidationException {
+        populateModelParallel(ABoxSource.csv(dataPath), threads, chunkSize);
+    }
+
+    public void populateModelParallel(ABoxSource source, int threads, int chunkSize) throws IOException, CsvValidationException {
+        ParallelABox abox = new ParallelABox(StreamRDFLib.graph(model.getGraph()), new ABoxState(seed), new Vocabulary(), threads, chunkSize);
+        abox.setMetrics(metrics);
+        abox.populate(source);
     }
 
     public void populateModel(String dataPath) throws IOException, CsvValidationException {
+        populateModel(ABoxSource.csv(dataPath));
+    }
 
-        CSVReaderHeaderAware reader = new CSVReaderHeaderAware(new FileReader(dataPath + "data.csv"));
+    public void populateModel(ABoxSource source) throws IOException, CsvValidationException {
+        populatePapers(source);
+        populateCitations(source);
+        populateRevisions(source);
+        populateReviewers(source);
+    }
+
+    // The stages of populateModel, each one needs the ones before it to have run
+
+    public void populatePapers(String dataPath) throws IOException, CsvValidationException {
+        populatePapers(ABoxSource.csv(dataPath));
+    }
+
+    public void populateCitations(String dataPath) throws IOException, CsvValidationException {
+        populateCitations(ABoxSource.csv(dataPath));
+    }
+
+    public void populateRevisions(String dataPath) throws IOException, CsvValidationException {
+        populateRevisions(ABoxSource.csv(dataPath));
+    }
+
+    public void populateReviewers(String dataPath) throws IOException, CsvValidationException {
+        populateReviewers(ABoxSource.csv(dataPath));
+    }
+
+    public void populatePapers(ABoxSource source) throws IOException, CsvValidationException {
+        long triples = startStage("papers");
+        ABoxSource.Rows rows = source.papers();
         Map<String, String> values;
-        while ((values = reader.readMap()) != null) {
+        while ((values = rows.next()) != null) {
+            metrics.row();
             boolean conference = values.get("Document Type").equals("Conference Paper");
 
             // Paper
@@ -87,30 +500,75 @@ public class ABox {
 
             paperSubmissions.put(values.get("DOI"), submission);
         }
+        endStage(triples);
+    }
 
-        reader = new CSVReaderHeaderAware(new FileReader(dataPath + "citations.csv"));
-        while ((values = reader.readMap()) != null) {
+    public void populateCitations(ABoxSource source) throws IOException, CsvValidationException {
+        long triples = startStage("citations");
+        ABoxSource.Rows rows = source.citations();
+        Map<String, String> values;
+        while ((values = rows.next()) != null) {
+            metrics.row();
             createCitation(values.get("Paper"), values.get("Citation"));
         }
+        if (unresolvedCitations > 0) {
+            System.out.printf("%d citations with a DOI that is not in data.csv were skipped%n", unresolvedCitations);
+        }
+        endStage(triples);
+    }
 
-        reader = new CSVReaderHeaderAware(new FileReader(dataPath + "reviews.csv"));
-        while ((values = reader.readMap()) != null) {
-            if (values.get("Decision").equals("False") || paperRevisions.containsKey(values.get("Paper"))) continue;
+    public void populateRevisions(ABoxSource source) throws IOException, CsvValidationException {
+        long triples = startStage("revisions");
+        ABoxSource.Rows rows = source.reviews();
+        Map<String, String> values;
+        while ((values = rows.next()) != null) {
+            metrics.row();
+            if (values.get("Decision").equals("False") || !papers.containsKey(values.get("Paper"))
+                    || paperRevisions.containsKey(values.get("Paper"))) continue;
             createRevision(values);
         }
+        endStage(triples);
+    }
 
-        reader = new CSVReaderHeaderAware(new FileReader(dataPath + "reviewers.csv"));
-        while ((values = reader.readMap()) != null) {
+    public void populateReviewers(ABoxSource source) throws IOException, CsvValidationException {
+        long triples = startStage("reviewers");
+        ABoxSource.Rows rows = source.reviewers();
+        Map<String, String> values;
+        while ((values = rows.next()) != null) {
+            metrics.row();
             addReviewers(values);
         }
+        if (unresolvedReviewers > 0) {
+            System.out.printf("%d reviewers that are not an author in data.csv were skipped%n", unresolvedReviewers);
+        }
+        endStage(triples);
+    }
+
+    // Triples are counted from the size of the base graph, which the in-memory graph keeps track of
+    private long startStage(String name) {
+        Graph graph = model.getBaseModel().getGraph();
+        long before = graph.size();
+        metrics.start(name, () -> graph.size() - before);
+        return before;
+    }
 
+    private void endStage(long triplesBefore) {
+        metrics.end(model.getBaseModel().getGraph().size() - triplesBefore);
+        metrics.entities(counters);
+        nodes.report(metrics);
     }
 
     private void addReviewers(Map<String, String> values) {
         ObjectProperty doneBy = model.getObjectProperty(TBox.ObjectProperties.doneBy);
         Individual revision = paperRevisions.get(values.get("Paper"));
-        for (String reviewer : values.get("Reviewers").split(";")) {
-            revision.addProperty(doneBy, model.getIndividual(name("A", reviewer)));
+        reviewers.reset(values.get("Reviewers"));
+        while (reviewers.next()) {
+            Individual reviewer = authorIndividuals.get(reviewers.toString());
+            if (reviewer == null) {
+                unresolvedReviewers++;
+                continue;
+            }
+            revision.addProperty(doneBy, reviewer);
         }
     }
 
@@ -119,25 +577,25 @@ public class ABox {
         ObjectProperty reviews = model.getObjectProperty(TBox.ObjectProperties.reviews);
         DatatypeProperty accepted = model.getDatatypeProperty(TBox.DataProperties.accepted);
         DatatypeProperty reviewText = model.getDatatypeProperty(TBox.DataProperties.reviewText);
-        OntProperty managedBy = model.getObjectProperty(TBox.ObjectProperties.managedBy);
         OntProperty assigns = model.getObjectProperty(TBox.ObjectProperties.assigns);
-        OntProperty submittedTo = model.getObjectProperty(TBox.ObjectProperties.submittedTo);
         OntProperty startDate = model.getDatatypeProperty(TBox.DataProperties.revisionDateStart);
         OntProperty endDate = model.getDatatypeProperty(TBox.DataProperties.revisionDateEnd);
 
-        Individual revision = revisionClass.createIndividual(autoName("R"));
-        revision.addLiteral(accepted, model.createTypedLiteral(true));
-        revision.addLiteral(reviewText, model.createTypedLiteral(values.get("Review")));
+        // Numbered by the row of the paper like in ABoxState, so revisions do not depend on the order of the reviews
+        Individual revision = revisionClass.createIndividual(name("R" + paperRows.get(values.get("Paper"))));
+        counters.merge("R", 1, Integer::sum);
+        revision.addLiteral(accepted, literal("true", XSDDatatype.XSDboolean));
+        revision.addLiteral(reviewText, literal(values.get("Review"), XSDDatatype.XSDstring));
 
         Individual submission = paperSubmissions.get(values.get("Paper"));
         revision.addProperty(reviews, submission);
 
-        String year = submission.getPropertyValue(model.getDatatypeProperty(TBox.DataProperties.submissionDate)).toString().split("-")[0];
-        revision.addProperty(startDate, model.createTypedLiteral(year + "-01-10", XSDDatatype.XSDdate));
-        revision.addProperty(endDate, model.createTypedLiteral(year + "-04-01", XSDDatatype.XSDdate));
+        String year = submissionYears.get(submission);
+        revision.addProperty(startDate, literal(year + "-01-10", XSDDatatype.XSDdate));
+        revision.addProperty(endDate, literal(year + "-04-01", XSDDatatype.XSDdate));
 
-        Individual venue = submission.getPropertyValue(submittedTo).as(Individual.class);
-        Individual handler = venue.listPropertyValues(managedBy).toList().get(random.nextInt(3)).as(Individual.class);
+        Individual venue = submissionVenues.get(submission);
+        Individual handler = venueHandlers.get(venue).get(choose(seed, "handler " + values.get("Paper"), 3));
         handler.addProperty(assigns, revision);
 
 
@@ -148,6 +606,10 @@ public class ABox {
         ObjectProperty cites = model.getObjectProperty(TBox.ObjectProperties.cites);
         Individual citer = papers.get(paper);
         Individual cited = papers.get(citation);
+        if (citer == null || cited == null) {
+            unresolvedCitations++;
+            return;
+        }
         citer.addProperty(cites, cited);
     }
 
@@ -157,7 +619,9 @@ public class ABox {
         OntProperty paperRelatedTo = model.getObjectProperty(TBox.ObjectProperties.paperRelatedTo);
         OntProperty venueRelatedTo = model.getObjectProperty(TBox.ObjectProperties.venueRelatedTo);
 
-        for (String keyword : values.get("Index Keywords").split("; ")) {
+        keywords.reset(values.get("Index Keywords"));
+        while (keywords.next()) {
+            String keyword = keywords.toString();
             Individual field;
             if (!fields.containsKey(keyword)) {
                 field = fieldClass.createIndividual(autoName("F"));
@@ -183,8 +647,10 @@ public class ABox {
         paper.addProperty(submittedAs, submission);
         submission.addProperty(submittedTo, venue);
         submission.addProperty(publishedIn, venuePublication);
-        submission.addLiteral(submissionDate, model.createTypedLiteral(year + "-01-01", XSDDatatype.XSDdate));
-        submission.addLiteral(acceptedDate, model.createTypedLiteral(year + "-04-02", XSDDatatype.XSDdate));
+        submission.addLiteral(submissionDate, literal(year + "-01-01", XSDDatatype.XSDdate));
+        submission.addLiteral(acceptedDate, literal(year + "-04-02", XSDDatatype.XSDdate));
+        submissionVenues.put(submission, venue);
+        submissionYears.put(submission, year);
 
         return submission;
     }
@@ -203,14 +669,14 @@ public class ABox {
         String vName = venueNames.get(values.get("Source title"));
         Individual venuePublication = venuePublicationClass.createIndividual(vName + "-" + values.get(conference ? "Year" : "Volume"));
         if (!venuePublication.hasProperty(venuePublicationYear)) {
-            venuePublication.addLiteral(venuePublicationYear, model.createTypedLiteral(values.get("Year"), XSDDatatype.XSDgYear));
+            venuePublication.addLiteral(venuePublicationYear, literal(values.get("Year"), XSDDatatype.XSDgYear));
         }
 
         venuePublication.addProperty(belongsTo, venue);
         if (conference) {
-            venuePublication.addProperty(takesPlaceIn, locationClass.createIndividual(TBox.DBPO + "Barcelona"));
+            venuePublication.addProperty(takesPlaceIn, locationClass.createIndividual(BARCELONA));
         } else {
-            venuePublication.addProperty(volumeNumber, model.createTypedLiteral(values.get("Volume"), XSDDatatype.XSDunsignedInt));
+            venuePublication.addProperty(volumeNumber, literal(values.get("Volume"), XSDDatatype.XSDunsignedInt));
         }
 
         return venuePublication;
@@ -226,7 +692,7 @@ public class ABox {
         OntClass journalClass = model.getOntClass(TBox.Classes.journal);
         OntProperty venueName = model.getDatatypeProperty(TBox.DataProperties.venueName);
 
-        OntClass venueClass = conference ? conferenceSubclasses.get(random.nextInt(4)) : journalClass;
+        OntClass venueClass = conference ? conferenceSubclasses.get(choose(seed, "venue " + values.get("Source title"), 4)) : journalClass;
         OntClass handlerClass = model.getOntClass(conference ? TBox.Classes.chair : TBox.Classes.editor);
         OntProperty managedBy = model.getObjectProperty(TBox.ObjectProperties.managedBy);
 
@@ -237,21 +703,25 @@ public class ABox {
             venue = venueClass.createIndividual(venueNames.get(vName));
             venue.addLiteral(venueName, model.createTypedLiteral(vName));
 
+            List<Individual> handlers = new ArrayList<>(3);
             for (int i = 0; i < 3; i++) {
                 Individual handler = handlerClass.createIndividual(autoName("H"));
                 venue.addProperty(managedBy, handler);
+                handlers.add(handler);
             }
+            venues.put(vName, venue);
+            venueHandlers.put(venue, handlers);
         } else {
-            venue = model.getIndividual(venueNames.get(vName));
+            venue = venues.get(vName);
         }
         return venue;
     }
 
     private void addPaperAuthors(OntModel model, Map<String, String> values, Individual paper) {
-        List<String> authors = Arrays.stream(values.get("Authors").split(", ")).toList();
-        List<String> authorsId = Arrays.stream(values.get("Author(s) ID").split(";")).toList();
-        for (int i = 0; i < authors.size(); i++) {
-            createAuthorPaper(model, authorsId.get(i), authors.get(i), paper);
+        authors.reset(values.get("Authors"));
+        authorIds.reset(values.get("Author(s) ID"));
+        while (authors.next() && authorIds.next()) {
+            createAuthorPaper(model, authorIds.toString(), authors.toString(), paper);
         }
     }
 
@@ -268,7 +738,8 @@ public class ABox {
         OntProperty paperTitle = model.getDatatypeProperty(TBox.DataProperties.title);
         OntProperty paperAbstract = model.getDatatypeProperty(TBox.DataProperties.paperAbstract);
 
-        OntClass paperClass = paperSubclasses.get(random.nextInt(conference ? 4 : 3));
+        OntClass paperClass = paperSubclasses.get(choose(seed, "paper " + values.get("DOI"), conference ? 4 : 3));
+        paperRows.put(values.get("DOI"), counters.getOrDefault("P", 0));
         Individual paper = paperClass.createIndividual(autoName("P"));
         paper.addLiteral(paperDOI, model.createTypedLiteral(values.get("DOI")));
         paper.addLiteral(paperTitle, model.createTypedLiteral(values.get("Title")));
@@ -283,13 +754,14 @@ public class ABox {
         OntProperty personName = model.getDatatypeProperty(TBox.DataProperties.name);
         OntProperty authorsPaper = model.getObjectProperty(TBox.ObjectProperties.authors);
 
-        String aid = name("A", id);
+        String aid = nodes.uri("A", id).getURI();
 
         Individual author;
         if (!authorNames.containsKey(aid)) {
             authorNames.put(aid, new HashSet<>());
         }
         author = authorClass.createIndividual(aid);
+        authorIndividuals.put(id, author);
 
         if (!authorNames.get(aid).contains(name)) {
             author.addLiteral(personName, model.createTypedLiteral(name));
@@ -299,11 +771,28 @@ public class ABox {
         author.addProperty(authorsPaper, paper);
     }
 
-    private String name(String prefix, String id) {
+    // A number below bound that only depends on the seed and the key, so the generated classes and handlers do
+    // not change with the order or the thread the rows are processed in
+    static int choose(long seed, String key, int bound) {
+        long hash = seed ^ 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash = (hash ^ key.charAt(i)) * 0x100000001b3L;
+        }
+        hash = (hash ^ (hash >>> 33)) * 0xff51afd7ed558ccdL;
+        hash = (hash ^ (hash >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return (int) Math.floorMod(hash ^ (hash >>> 33), (long) bound);
+    }
+
+    // Literals that repeat across rows (dates, years, volumes, review texts) share one Node
+    private Literal literal(String lexical, RDFDatatype type) {
+        return model.asRDFNode(nodes.literal(lexical, type)).asLiteral();
+    }
+
+    static String name(String prefix, String id) {
         return TBox.NS + prefix + URLEncoder.encode(id, StandardCharsets.UTF_8);
     }
 
-    private String name(String id) {
+    static String name(String id) {
         return TBox.NS + URLEncoder.encode(id, StandardCharsets.UTF_8);
     }
 
@@ -0,0 +1,66 @@
+package sdm.knowledge;
+
+import com.opencsv.exceptions.CsvValidationException;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+// The four inputs of an ABox build as rows keyed by the columns of data.csv, citations.csv, reviews.csv and
+// reviewers.csv. Every call starts the rows from the beginning.
+public interface ABoxSource {
+
+    // Like CSVReaderHeaderAware.readMap: the next row, or null after the last one. The map may be reused for
+    // the next row, so it has to be copied to be kept.
+    interface Rows {
+        Map<String, String> next() throws IOException, CsvValidationException;
+    }
+
+    Rows papers() throws IOException;
+
+    Rows citations() throws IOException;
+
+    Rows reviews() throws IOException;
+
+    Rows reviewers() throws IOException;
+
+    // The csvs of a resources folder (ending in /)
+    static ABoxSource csv(String dataPath) {
+        return new ABoxSource() {
+            @Override
+            public Rows papers() throws IOException {
+                return open("data.csv");
+            }
+
+            @Override
+            public Rows citations() throws IOException {
+                return open("citations.csv");
+            }
+
+            @Override
+            public Rows reviews() throws IOException {
+                return open("reviews.csv");
+            }
+
+            @Override
+            public Rows reviewers() throws IOException {
+                return open("reviewers.csv");
+            }
+
+            private Rows open(String file) throws IOException {
+                CsvReader reader = new CsvReader(dataPath + file);
+                return () -> {
+                    if (reader.next()) return reader.row();
+                    reader.close();
+                    return null;
+                };
+            }
+        };
+    }
+
+    static Rows of(List<Map<String, String>> rows) {
+        Iterator<Map<String, String>> iterator = rows.iterator();
+        return () -> iterator.hasNext() ? iterator.next() : null;
+    }
+}
@@ -0,0 +1,467 @@
+package sdm.knowledge;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Identifiers handed out while building the ABox. DOIs, author ids and keywords are kept in StringDictionary
+// instances and everything known about a paper is stored in int columns indexed by the dictionary id of its
+// DOI; IRIs are built from the numbers when they are asked for.
+public class ABoxState {
+    private static final int VERSION = 5;
+
+    public static class Venue {
+        final int index;
+        final String iri;
+        final List<String> handlers;
+
+        Venue(int index, String iri, List<String> handlers) {
+            this.index = index;
+            this.iri = iri;
+            this.handlers = handlers;
+        }
+    }
+
+    final Map<String, AtomicInteger> counters = new ConcurrentHashMap<>();
+    final Map<String, Venue> venues = new ConcurrentHashMap<>();
+    final Set<String> venuePublications = ConcurrentHashMap.newKeySet();
+    // Not persisted, the first row of every venue publication of the current run
+    private final Map<String, Long> venuePublicationRows = new ConcurrentHashMap<>();
+    final Set<String> venueFields = ConcurrentHashMap.newKeySet();
+    final AtomicLong citationRows = new AtomicLong();
+    final AtomicBoolean locationCreated = new AtomicBoolean();
+    // Not persisted, only reported for the current run
+    final AtomicLong unresolvedCitations = new AtomicLong();
+    final AtomicLong unresolvedReviewers = new AtomicLong();
+    // Seed of the generated classes and handlers, kept so a continued run makes the same choices
+    private final long seed;
+
+    private final List<Venue> venueList = new ArrayList<>();
+    private final StringDictionary venueNames = new StringDictionary();
+    private final BitSet conferenceVenues = new BitSet();
+    private final StringDictionary authors = new StringDictionary();
+    private final StringDictionary authorNames = new StringDictionary();
+    private final StringDictionary keywords = new StringDictionary();
+    private final BitSet createdFields = new BitSet();
+
+    // Paper columns, indexed by the id of the DOI. Revisions are stored plus one so that 0 means none.
+    private final StringDictionary dois = new StringDictionary();
+    private int[] paperRows = new int[1024];
+    private int[] paperVenues = new int[1024];
+    private int[] paperYears = new int[1024];
+    private int[] paperRevisions = new int[1024];
+    private final BitSet reviewedPapers = new BitSet();
+
+    // Citations and reviewers that could not be linked yet, e.g. because the cited paper or the reviewer is in
+    // rows a later run adds. They are kept with the state and retried by every incremental run.
+    private final List<String[]> pendingCitations = new ArrayList<>();
+    private final Map<String, List<String>> pendingReviewers = new LinkedHashMap<>();
+
+    public ABoxState() {
+        this(0);
+    }
+
+    public ABoxState(long seed) {
+        this.seed = seed;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    int choose(String key, int bound) {
+        return ABox.choose(seed, key, bound);
+    }
+
+    // Papers and submissions are numbered by their row in data.csv, so the names do not depend on which
+    // worker processes the row. The counter is only moved forward to keep counts consistent.
+    String rowName(String prefix, long row) {
+        counter(prefix).accumulateAndGet((int) row + 1, Math::max);
+        return ABox.name(prefix + row);
+    }
+
+    public int count(String prefix) {
+        AtomicInteger counter = counters.get(prefix);
+        return counter == null ? 0 : counter.get();
+    }
+
+    private AtomicInteger counter(String prefix) {
+        return counters.computeIfAbsent(prefix, p -> new AtomicInteger());
+    }
+
+    // ---------------------
+    // -------Venues--------
+    // ---------------------
+
+    // Venues are numbered by the order their names first appear in data.csv, and their handlers by the number of
+    // the venue, so the names do not depend on which worker creates the venue (see StreamingABox.registerPaperRow).
+    // A venue is a conference if the first row it appears in is a conference paper.
+    int registerVenue(String name, boolean conference) {
+        synchronized (venueNames) {
+            int size = venueNames.size();
+            int id = venueNames.add(name);
+            if (id == size && conference) {
+                conferenceVenues.set(id);
+            }
+            return id;
+        }
+    }
+
+    boolean isConference(String name) {
+        synchronized (venueNames) {
+            return conferenceVenues.get(venueNames.id(name));
+        }
+    }
+
+    String venueName(String name) {
+        return rowName("V", venueNames.id(name));
+    }
+
+    String handlerName(String venue, int handler) {
+        return rowName("H", 3L * venueNames.id(venue) + handler);
+    }
+
+    // A venue publication is created by the first row it appears in, which gives its year
+    void registerVenuePublication(String name, long row) {
+        venuePublicationRows.putIfAbsent(name, row);
+    }
+
+    // False if the publication already exists or row is not its first row
+    boolean addVenuePublication(String name, long row) {
+        Long first = venuePublicationRows.get(name);
+        return (first == null || first == row) && venuePublications.add(name);
+    }
+
+    synchronized Venue createVenue(String iri, List<String> handlers) {
+        Venue venue = new Venue(venueList.size(), iri, handlers);
+        venueList.add(venue);
+        return venue;
+    }
+
+    // ---------------------
+    // -------Authors-------
+    // ---------------------
+
+    // True the first time the author id is seen
+    boolean addAuthor(String id) {
+        return authors.insert(id);
+    }
+
+    boolean hasAuthor(String id) {
+        return authors.contains(id);
+    }
+
+    // True the first time the name is seen for the author
+    boolean addAuthorName(String id, String name) {
+        return authorNames.insert(id + '\u0000' + name);
+    }
+
+    // ---------------------
+    // -------Fields--------
+    // ---------------------
+
+    // Keywords are numbered by the order they first appear in data.csv, like venues
+    int registerKeyword(String keyword) {
+        return keywords.add(keyword);
+    }
+
+    // Field IRIs are numbered by the id of their keyword. The consumer is called with the IRI of a new field.
+    String field(String keyword, Consumer<String> created) {
+        synchronized (keywords) {
+            int id = registerKeyword(keyword);
+            if (createdFields.get(id)) {
+                return ABox.name("F" + id);
+            }
+            createdFields.set(id);
+            String field = rowName("F", id);
+            created.accept(field);
+            return field;
+        }
+    }
+
+    // ---------------------
+    // -------Papers--------
+    // ---------------------
+
+    synchronized void addPaper(String doi, long row, Venue venue, String year) {
+        int id = dois.add(doi);
+        if (id == paperRows.length) {
+            int length = paperRows.length * 2;
+            paperRows = Arrays.copyOf(paperRows, length);
+            paperVenues = Arrays.copyOf(paperVenues, length);
+            paperYears = Arrays.copyOf(paperYears, length);
+            paperRevisions = Arrays.copyOf(paperRevisions, length);
+        }
+        paperRows[id] = (int) row;
+        paperVenues[id] = venue.index;
+        paperYears[id] = Integer.parseInt(year);
+    }
+
+    boolean hasPaper(String doi) {
+        return dois.contains(doi);
+    }
+
+    synchronized String paper(String doi) {
+        int id = dois.id(doi);
+        return id < 0 ? null : ABox.name("P" + paperRows[id]);
+    }
+
+    synchronized String submission(String doi) {
+        int id = dois.id(doi);
+        return id < 0 ? null : ABox.name("Sub" + paperRows[id]);
+    }
+
+    synchronized Venue submissionVenue(String doi) {
+        int id = dois.id(doi);
+        return id < 0 ? null : venueList.get(paperVenues[id]);
+    }
+
+    synchronized String submissionYear(String doi) {
+        int id = dois.id(doi);
+        return id < 0 ? null : Integer.toString(paperYears[id]);
+    }
+
+    synchronized boolean hasRevision(String doi) {
+        int id = dois.id(doi);
+        return id >= 0 && paperRevisions[id] != 0;
+    }
+
+    synchronized String revision(String doi) {
+        int id = dois.id(doi);
+        return id < 0 || paperRevisions[id] == 0 ? null : ABox.name("R" + (paperRevisions[id] - 1));
+    }
+
+    // A paper has at most one revision, so revisions are numbered by the row of their paper, like submissions,
+    // and do not depend on the order the reviews are read in. The paper has to be known.
+    synchronized String addRevision(String doi) {
+        int id = dois.id(doi);
+        paperRevisions[id] = paperRows[id] + 1;
+        counter("R").incrementAndGet();
+        return ABox.name("R" + paperRows[id]);
+    }
+
+    synchronized void markReviewed(String doi) {
+        int id = dois.id(doi);
+        if (id >= 0) {
+            reviewedPapers.set(id);
+        }
+    }
+
+    synchronized boolean isReviewed(String doi) {
+        int id = dois.id(doi);
+        return id >= 0 && reviewedPapers.get(id);
+    }
+
+    // ---------------------
+    // -------Pending-------
+    // ---------------------
+
+    synchronized void addPendingCitation(String paper, String citation) {
+        pendingCitations.add(new String[]{paper, citation});
+    }
+
+    // The pending citations, which are no longer pending afterwards
+    synchronized List<String[]> takePendingCitations() {
+        List<String[]> citations = new ArrayList<>(pendingCitations);
+        pendingCitations.clear();
+        return citations;
+    }
+
+    synchronized void addPendingReviewers(String paper, List<String> reviewers) {
+        pendingReviewers.computeIfAbsent(paper, p -> new ArrayList<>()).addAll(reviewers);
+    }
+
+    synchronized boolean hasPendingReviewers(String paper) {
+        return pendingReviewers.containsKey(paper);
+    }
+
+    // The pending reviewers by paper, which are no longer pending afterwards
+    synchronized Map<String, List<String>> takePendingReviewers() {
+        Map<String, List<String>> reviewers = new LinkedHashMap<>(pendingReviewers);
+        pendingReviewers.clear();
+        return reviewers;
+    }
+
+    public synchronized int pendingCitations() {
+        return pendingCitations.size();
+    }
+
+    public synchronized int pendingReviewers() {
+        return pendingReviewers.values().stream().mapToInt(List::size).sum();
+    }
+
+    // ---------------------
+    // -------Footprint-----
+    // ---------------------
+
+    public synchronized long heapBytes() {
+        return authors.heapBytes() + authorNames.heapBytes() + venueNames.heapBytes() + keywords.heapBytes() + dois.heapBytes()
+                + 16L * paperRows.length + reviewedPapers.size() / 8;
+    }
+
+    public long offHeapBytes() {
+        return authors.offHeapBytes() + authorNames.offHeapBytes() + venueNames.offHeapBytes() + keywords.offHeapBytes()
+                + dois.offHeapBytes();
+    }
+
+    // ---------------------
+    // -----Persistence-----
+    // ---------------------
+
+    public synchronized void save(String path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(path))))) {
+            out.writeInt(VERSION);
+            out.writeLong(seed);
+
+            out.writeInt(counters.size());
+            for (Map.Entry<String, AtomicInteger> counter : counters.entrySet()) {
+                out.writeUTF(counter.getKey());
+                out.writeInt(counter.getValue().get());
+            }
+
+            writeDictionary(out, authors);
+            writeDictionary(out, authorNames);
+            writeDictionary(out, venueNames);
+
+            out.writeInt(venues.size());
+            for (Map.Entry<String, Venue> venue : venues.entrySet()) {
+                out.writeUTF(venue.getKey());
+                out.writeInt(venue.getValue().index);
+                out.writeUTF(venue.getValue().iri);
+                writeStrings(out, venue.getValue().handlers);
+            }
+
+            writeStrings(out, venuePublications);
+            writeStrings(out, venueFields);
+
+            writeDictionary(out, dois);
+            for (int id = 0; id < dois.size(); id++) {
+                out.writeInt(paperRows[id]);
+                out.writeInt(paperVenues[id]);
+                out.writeInt(paperYears[id]);
+                out.writeInt(paperRevisions[id]);
+                out.writeBoolean(reviewedPapers.get(id));
+            }
+
+            writeDictionary(out, keywords);
+            out.writeLong(citationRows.get());
+            out.writeBoolean(locationCreated.get());
+
+            out.writeInt(pendingCitations.size());
+            for (String[] citation : pendingCitations) {
+                out.writeUTF(citation[0]);
+                out.writeUTF(citation[1]);
+            }
+            out.writeInt(pendingReviewers.size());
+            for (Map.Entry<String, List<String>> reviewers : pendingReviewers.entrySet()) {
+                out.writeUTF(reviewers.getKey());
+                writeStrings(out, reviewers.getValue());
+            }
+        }
+    }
+
+    public static ABoxState load(String path) throws IOException {
+        ABoxState state;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(path))))) {
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported ABox state version " + version + " in " + path);
+            }
+            state = new ABoxState(in.readLong());
+
+            for (int i = in.readInt(); i > 0; i--) {
+                state.counters.put(in.readUTF(), new AtomicInteger(in.readInt()));
+            }
+
+            readDictionary(in, state.authors);
+            readDictionary(in, state.authorNames);
+            readDictionary(in, state.venueNames);
+
+            Venue[] venues = new Venue[in.readInt()];
+            for (int i = 0; i < venues.length; i++) {
+                String name = in.readUTF();
+                Venue venue = new Venue(in.readInt(), in.readUTF(), readStrings(in));
+                state.venues.put(name, venue);
+                venues[venue.index] = venue;
+            }
+            state.venueList.addAll(Arrays.asList(venues));
+
+            state.venuePublications.addAll(readStrings(in));
+            state.venueFields.addAll(readStrings(in));
+
+            readDictionary(in, state.dois);
+            int papers = state.dois.size();
+            int length = Math.max(papers, state.paperRows.length);
+            state.paperRows = new int[length];
+            state.paperVenues = new int[length];
+            state.paperYears = new int[length];
+            state.paperRevisions = new int[length];
+            for (int id = 0; id < papers; id++) {
+                state.paperRows[id] = in.readInt();
+                state.paperVenues[id] = in.readInt();
+                state.paperYears[id] = in.readInt();
+                state.paperRevisions[id] = in.readInt();
+                state.reviewedPapers.set(id, in.readBoolean());
+            }
+
+            readDictionary(in, state.keywords);
+            // A state is saved after its rows are built, so every keyword in it has its field
+            state.createdFields.set(0, state.keywords.size());
+            state.citationRows.set(in.readLong());
+            state.locationCreated.set(in.readBoolean());
+
+            for (int i = in.readInt(); i > 0; i--) {
+                state.pendingCitations.add(new String[]{in.readUTF(), in.readUTF()});
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                state.pendingReviewers.put(in.readUTF(), readStrings(in));
+            }
+        }
+        return state;
+    }
+
+    // writeUTF is limited to 64KB per string, which is enough for identifiers and names
+    private static void writeStrings(DataOutputStream out, Iterable<String> strings) throws IOException {
+        List<String> list = new ArrayList<>();
+        strings.forEach(list::add);
+        out.writeInt(list.size());
+        for (String s : list) {
+            out.writeUTF(s);
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        List<String> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(in.readUTF());
+        }
+        return list;
+    }
+
+    // Keys are written in id order so they get the same ids when read back
+    private static void writeDictionary(DataOutputStream out, StringDictionary dictionary) throws IOException {
+        out.writeInt(dictionary.size());
+        for (int id = 0; id < dictionary.size(); id++) {
+            out.writeUTF(dictionary.get(id));
+        }
+    }
+
+    private static void readDictionary(DataInputStream in, StringDictionary dictionary) throws IOException {
+        for (int i = in.readInt(); i > 0; i--) {
+            dictionary.add(in.readUTF());
+        }
+    }
+}
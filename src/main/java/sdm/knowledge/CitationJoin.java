@@ -0,0 +1,126 @@
+package sdm.knowledge;
+
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.system.StreamRDF;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+// Links citations without looking DOIs up in memory. The DOI -> paper IRI table and the citation pairs are
+// sorted externally and joined twice by merging: citations sorted by citing DOI pick up the citing IRI, and
+// the result sorted by cited DOI picks up the cited IRI and is emitted. Citations with a DOI that is not in
+// the table are counted and dropped.
+public class CitationJoin implements AutoCloseable {
+    private final StreamRDF out;
+    private final Vocabulary v;
+    private final ExternalSorter papers;
+    private final ExternalSorter citations;
+    private final ExternalSorter cited;
+    private long linked = 0;
+    private long unresolvedCiting = 0;
+    private long unresolvedCited = 0;
+
+    public CitationJoin(StreamRDF out, Vocabulary vocabulary, int runSize, File directory) {
+        this.out = out;
+        this.v = vocabulary;
+        this.papers = new ExternalSorter(2, runSize, directory);
+        this.citations = new ExternalSorter(2, runSize, directory);
+        this.cited = new ExternalSorter(2, runSize, directory);
+    }
+
+    // When a DOI is added more than once the last IRI wins, as with the in-memory lookups
+    public void addPaper(String doi, String iri) throws IOException {
+        papers.add(doi, iri);
+    }
+
+    public void addCitation(String paper, String citation) throws IOException {
+        citations.add(paper, citation);
+    }
+
+    public void join() throws IOException {
+        // (citing DOI, cited DOI) -> (cited DOI, citing IRI)
+        Table table = new Table(papers.sorted());
+        Iterator<String[]> pairs = citations.sorted();
+        while (pairs.hasNext()) {
+            String[] pair = pairs.next();
+            String citer = table.lookup(pair[0]);
+            if (citer == null) {
+                unresolvedCiting++;
+            } else {
+                cited.add(pair[1], citer);
+            }
+        }
+
+        // (cited DOI, citing IRI) -> citing IRI cites cited IRI
+        table = new Table(papers.sorted());
+        pairs = cited.sorted();
+        while (pairs.hasNext()) {
+            String[] pair = pairs.next();
+            String citation = table.lookup(pair[0]);
+            if (citation == null) {
+                unresolvedCited++;
+            } else {
+                out.triple(Triple.create(NodeFactory.createURI(pair[1]), v.cites, NodeFactory.createURI(citation)));
+                linked++;
+            }
+        }
+    }
+
+    public long getLinked() {
+        return linked;
+    }
+
+    public long getUnresolved() {
+        return unresolvedCiting + unresolvedCited;
+    }
+
+    public String report() {
+        return String.format("Linked %d citations, %d unresolved (%d citing and %d cited DOIs not found), %d sorted runs, %d merged runs",
+                linked, getUnresolved(), unresolvedCiting, unresolvedCited, papers.getRuns() + citations.getRuns() + cited.getRuns(),
+                papers.getMerged() + citations.getMerged() + cited.getMerged());
+    }
+
+    // Looks up keys in ascending order in a sorted (DOI, IRI) iterator, keeping the last IRI of repeated DOIs
+    private static class Table {
+        private final Iterator<String[]> entries;
+        private String[] ahead;
+        private String doi;
+        private String iri;
+
+        Table(Iterator<String[]> entries) {
+            this.entries = entries;
+            this.ahead = entries.hasNext() ? entries.next() : null;
+            advance();
+        }
+
+        String lookup(String key) {
+            while (doi != null && doi.compareTo(key) < 0) {
+                advance();
+            }
+            return key.equals(doi) ? iri : null;
+        }
+
+        private void advance() {
+            if (ahead == null) {
+                doi = null;
+                return;
+            }
+            doi = ahead[0];
+            iri = ahead[1];
+            ahead = entries.hasNext() ? entries.next() : null;
+            while (ahead != null && ahead[0].equals(doi)) {
+                iri = ahead[1];
+                ahead = entries.hasNext() ? entries.next() : null;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        papers.close();
+        citations.close();
+        cited.close();
+    }
+}
@@ -0,0 +1,347 @@
+package sdm.knowledge;
+
+import com.opencsv.exceptions.CsvValidationException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+// Reads a UTF-8 csv with a header line from a FileChannel without allocating per row: the fields of the
+// current row are unquoted into one char array and exposed as CharSequence views that are reused for every
+// row. Strings are only made when a field is asked for as a String, once per row. Rows must have as many
+// fields as the header, like with CSVReaderHeaderAware; empty lines are skipped.
+public class CsvReader implements Closeable {
+    private static final int BUFFER = 1 << 16;
+
+    private final String path;
+    private final FileChannel channel;
+    // Heap buffers, which the UTF-8 decoder reads and writes as arrays
+    private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER);
+    private final CharBuffer chars = CharBuffer.allocate(BUFFER);
+    private final char[] decoded = chars.array();
+    private int position;
+    private int limit;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private boolean endOfInput = false;
+    private boolean flushed = false;
+    private int pending = -1;
+
+    private final String[] header;
+    private final Map<String, Integer> columns = new HashMap<>();
+    private final Field[] fields;
+    private final String[] strings;
+    private final Row row = new Row();
+    private char[] buffer = new char[1024];
+    private int[] ends = new int[16];
+    private int length;
+    private int count;
+    private long line = 1;
+
+    public CsvReader(String path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(Path.of(path), StandardOpenOption.READ);
+        bytes.flip();
+        if (!readRow()) {
+            channel.close();
+            throw new IOException("No header in " + path);
+        }
+        header = new String[count];
+        fields = new Field[count];
+        strings = new String[count];
+        for (int i = 0; i < count; i++) {
+            fields[i] = new Field();
+            header[i] = field(i).toString();
+            columns.put(header[i], i);
+        }
+    }
+
+    // Index of a header column, resolved once so that rows can be read by position
+    public int column(String name) {
+        Integer column = columns.get(name);
+        if (column == null) {
+            throw new IllegalArgumentException("No column " + name + " in " + path);
+        }
+        return column;
+    }
+
+    public List<String> header() {
+        return Arrays.asList(header);
+    }
+
+    // Moves to the next row, false at the end of the file
+    public boolean next() throws IOException, CsvValidationException {
+        do {
+            if (!readRow()) return false;
+        } while (count == 1 && length == 0);
+        if (count != header.length) {
+            throw new CsvValidationException("Line " + (line - 1) + " of " + path + " has " + count + " fields, the header has " + header.length);
+        }
+        Arrays.fill(strings, null);
+        return true;
+    }
+
+    // The field of the current row. The same instance is returned for every row, so it changes on next().
+    public CharSequence field(int column) {
+        Field field = fields[column];
+        field.start = column == 0 ? 0 : ends[column - 1];
+        field.end = ends[column];
+        return field;
+    }
+
+    public String get(int column) {
+        String value = strings[column];
+        if (value == null) {
+            value = strings[column] = field(column).toString();
+        }
+        return value;
+    }
+
+    // The current row as a map from the header to the fields, like CSVReaderHeaderAware.readMap. The map is
+    // the same for every row: copy it to keep it.
+    public Map<String, String> row() {
+        return row;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private class Field implements CharSequence {
+        int start;
+        int end;
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return buffer[start + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return new String(buffer, start + from, to - from);
+        }
+
+        @Override
+        public String toString() {
+            return new String(buffer, start, end - start);
+        }
+    }
+
+    private class Row extends AbstractMap<String, String> {
+        @Override
+        public String get(Object key) {
+            Integer column = columns.get(key);
+            return column == null ? null : CsvReader.this.get(column);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return columns.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return header.length;
+        }
+
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            Set<Entry<String, String>> entries = new LinkedHashSet<>();
+            for (int i = 0; i < header.length; i++) {
+                entries.add(new SimpleImmutableEntry<>(header[i], CsvReader.this.get(i)));
+            }
+            return entries;
+        }
+    }
+
+    // ---------------------
+    // -------Parsing-------
+    // ---------------------
+
+    // Unquotes the fields of the next record into buffer, ending each one at ends[i]
+    private boolean readRow() throws IOException {
+        length = 0;
+        count = 0;
+        int c = read();
+        if (c < 0) return false;
+        boolean quoted = false;
+        boolean fieldStart = true;
+        while (true) {
+            if (quoted) {
+                if (c < 0) {
+                    endField();
+                    return true;
+                }
+                if (c == '"') {
+                    c = read();
+                    if (c != '"') {
+                        quoted = false;
+                        continue;
+                    }
+                } else if (c == '\n') {
+                    line++;
+                }
+                append((char) c);
+            } else if (c == '"' && fieldStart) {
+                quoted = true;
+                fieldStart = false;
+            } else if (c == ',') {
+                endField();
+                fieldStart = true;
+            } else if (c == '\n' || c == '\r' || c < 0) {
+                if (c == '\r') {
+                    int after = read();
+                    if (after != '\n') pending = after;
+                }
+                line++;
+                endField();
+                return true;
+            } else {
+                append((char) c);
+                fieldStart = false;
+            }
+            c = read();
+        }
+    }
+
+    private void append(char c) {
+        if (length == buffer.length) {
+            buffer = Arrays.copyOf(buffer, length * 2);
+        }
+        buffer[length++] = c;
+    }
+
+    private void endField() {
+        if (count == ends.length) {
+            ends = Arrays.copyOf(ends, count * 2);
+        }
+        ends[count++] = length;
+    }
+
+    private int read() throws IOException {
+        if (pending != -1) {
+            int c = pending;
+            pending = -1;
+            return c;
+        }
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return decoded[position++];
+    }
+
+    private boolean fill() throws IOException {
+        if (flushed) return false;
+        chars.clear();
+        while (chars.position() == 0) {
+            decoder.decode(bytes, chars, endOfInput);
+            if (chars.position() > 0) break;
+            if (endOfInput) {
+                decoder.flush(chars);
+                flushed = true;
+                break;
+            }
+            bytes.compact();
+            if (channel.read(bytes) < 0) {
+                endOfInput = true;
+            }
+            bytes.flip();
+        }
+        position = 0;
+        limit = chars.position();
+        return limit > 0;
+    }
+
+    // ---------------------
+    // ------Splitting------
+    // ---------------------
+
+    // The values of a multi-valued field, such as "a; b; c", one at a time without building an array. It is
+    // itself the current value, and is meant to be reset and reused for every row.
+    public static class Splitter implements CharSequence {
+        private final String separator;
+        private CharSequence value = "";
+        private int start;
+        private int end;
+        private int next = -1;
+
+        public Splitter(String separator) {
+            this.separator = separator;
+        }
+
+        public Splitter reset(CharSequence value) {
+            this.value = value;
+            this.next = 0;
+            return this;
+        }
+
+        // Moves to the next value, false after the last one. Like String.split, trailing empty values are
+        // dropped, unless the separator does not occur at all.
+        public boolean next() {
+            if (next < 0) return false;
+            start = next;
+            end = indexOf(start);
+            next = end < 0 ? -1 : end + separator.length();
+            if (end < 0) end = value.length();
+            if (start == end && !(start == 0 && next < 0) && onlySeparators(start)) {
+                next = -1;
+                return false;
+            }
+            return true;
+        }
+
+        private boolean onlySeparators(int from) {
+            for (int i = from; i < value.length(); i += separator.length()) {
+                if (indexOf(i) != i) return false;
+            }
+            return true;
+        }
+
+        private int indexOf(int from) {
+            int last = value.length() - separator.length();
+            outer:
+            for (int i = from; i <= last; i++) {
+                for (int j = 0; j < separator.length(); j++) {
+                    if (value.charAt(i + j) != separator.charAt(j)) continue outer;
+                }
+                return i;
+            }
+            return -1;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return value.charAt(start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return value.subSequence(start + from, start + to);
+        }
+
+        @Override
+        public String toString() {
+            return value.subSequence(start, end).toString();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package sdm.knowledge;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Compares the memory needed to keep the identifiers of n synthetic papers in String keyed maps, the way the
+// ABox builders used to, against the dictionary backed ABoxState. Every paper has three authors out of n / 2
+// and two keywords out of n / 20. Run with a fixed heap (e.g. -Xms4g -Xmx4g) to keep the numbers stable.
+public class DictionaryFootprint {
+    // Keeps the measured structures reachable while the heap is sampled
+    private static Object retained;
+
+    public static void main(String[] args) {
+        if (args.length > 1) {
+            System.out.println("Usage: DictionaryFootprint [papers]");
+            System.out.println("\t papers: number of synthetic papers, 1000000 by default");
+            return;
+        }
+        int papers = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        long before = usedHeap();
+        retained = fillMaps(papers);
+        long mapBytes = usedHeap() - before;
+        System.out.printf("String maps:     %,d bytes on heap (%.1f per paper)%n", mapBytes, (double) mapBytes / papers);
+        retained = null;
+
+        before = usedHeap();
+        ABoxState state = fillState(papers);
+        retained = state;
+        long stateBytes = usedHeap() - before;
+        System.out.printf("Dictionaries:    %,d bytes on heap (%.1f per paper), %,d bytes off heap (%.1f per paper)%n",
+                stateBytes, (double) stateBytes / papers, state.offHeapBytes(), (double) state.offHeapBytes() / papers);
+        System.out.printf("Heap reduction:  %.1fx%n", (double) mapBytes / stateBytes);
+    }
+
+    private static Object fillMaps(int papers) {
+        Map<String, String> paperMap = new ConcurrentHashMap<>();
+        Map<String, String> paperSubmissions = new ConcurrentHashMap<>();
+        Map<String, ABoxState.Venue> submissionVenues = new ConcurrentHashMap<>();
+        Map<String, String> submissionYears = new ConcurrentHashMap<>();
+        Map<String, String> paperRevisions = new ConcurrentHashMap<>();
+        Map<String, Set<String>> authorNames = new ConcurrentHashMap<>();
+        Map<String, String> fields = new ConcurrentHashMap<>();
+        ABoxState.Venue venue = new ABoxState.Venue(0, ABox.name("V0"), List.of());
+
+        for (int i = 0; i < papers; i++) {
+            String doi = doi(i);
+            String submission = ABox.name("Sub" + i);
+            paperMap.put(doi, ABox.name("P" + i));
+            paperSubmissions.put(doi, submission);
+            submissionVenues.put(submission, venue);
+            submissionYears.put(submission, year(i));
+            paperRevisions.put(doi, ABox.name("R" + i));
+            for (int a = 0; a < 3; a++) {
+                int author = author(i, a, papers);
+                authorNames.computeIfAbsent(ABox.name("A", Integer.toString(author)), k -> ConcurrentHashMap.newKeySet()).add("Author " + author);
+            }
+            for (int k = 0; k < 2; k++) {
+                fields.computeIfAbsent(keyword(i, k, papers), key -> ABox.name("F" + fields.size()));
+            }
+        }
+        return new Object[]{paperMap, paperSubmissions, submissionVenues, submissionYears, paperRevisions, authorNames, fields};
+    }
+
+    private static ABoxState fillState(int papers) {
+        ABoxState state = new ABoxState();
+        ABoxState.Venue venue = state.createVenue(ABox.name("V0"), List.of());
+
+        for (int i = 0; i < papers; i++) {
+            String doi = doi(i);
+            state.addPaper(doi, i, venue, year(i));
+            state.addRevision(doi);
+            for (int a = 0; a < 3; a++) {
+                String author = Integer.toString(author(i, a, papers));
+                state.addAuthor(author);
+                state.addAuthorName(author, "Author " + author);
+            }
+            for (int k = 0; k < 2; k++) {
+                state.field(keyword(i, k, papers), f -> {});
+            }
+        }
+        return state;
+    }
+
+    private static String doi(int i) {
+        return "10.1109/ACCESS." + (2000 + i % 23) + "." + (3000000 + i);
+    }
+
+    private static String year(int i) {
+        return Integer.toString(2000 + i % 23);
+    }
+
+    private static int author(int paper, int position, int papers) {
+        return 57000000 + (int) ((paper * 3L + position) * 2654435761L % Math.max(1, papers / 2));
+    }
+
+    private static String keyword(int paper, int position, int papers) {
+        return "Keyword " + ((paper * 2L + position) * 40503L % Math.max(1, papers / 20));
+    }
+
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
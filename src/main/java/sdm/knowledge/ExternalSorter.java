@@ -0,0 +1,195 @@
+package sdm.knowledge;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+
+// Sorts records of a fixed number of strings by their first string. Records are buffered in memory and
+// written to a sorted run file in the given directory every runSize records; sorted() merges the runs.
+// At most fanIn runs are read at once: with more, consecutive runs are first merged into longer ones in
+// passes, so the open files and their buffers stay bounded however large the input is. Records with equal
+// keys keep the order they were added in.
+public class ExternalSorter implements AutoCloseable {
+    public static final int FAN_IN = 64;
+
+    private static final Comparator<String[]> BY_KEY = Comparator.comparing(r -> r[0]);
+
+    private final int arity;
+    private final int runSize;
+    private final int fanIn;
+    private final File directory;
+    private final List<Run> runs = new ArrayList<>();
+    private List<String[]> buffer = new ArrayList<>();
+    private long size = 0;
+    private int spilled = 0;
+    private int merged = 0;
+
+    private static class Run {
+        final File file;
+        final long size;
+
+        Run(File file, long size) {
+            this.file = file;
+            this.size = size;
+        }
+    }
+
+    public ExternalSorter(int arity, int runSize, File directory) {
+        this(arity, runSize, FAN_IN, directory);
+    }
+
+    public ExternalSorter(int arity, int runSize, int fanIn, File directory) {
+        if (fanIn < 2) {
+            throw new IllegalArgumentException("The fan-in must be at least 2, got " + fanIn);
+        }
+        this.arity = arity;
+        this.runSize = runSize;
+        this.fanIn = fanIn;
+        this.directory = directory;
+    }
+
+    public synchronized void add(String... record) throws IOException {
+        if (record.length != arity) {
+            throw new IllegalArgumentException("Expected " + arity + " values, got " + record.length);
+        }
+        buffer.add(record);
+        size++;
+        if (buffer.size() >= runSize) {
+            spill();
+        }
+    }
+
+    public long size() {
+        return size;
+    }
+
+    // Runs written from the buffer
+    public int getRuns() {
+        return spilled;
+    }
+
+    // Runs written by merging other runs
+    public int getMerged() {
+        return merged;
+    }
+
+    // Can be called more than once, each call iterates over all the records
+    public synchronized Iterator<String[]> sorted() throws IOException {
+        if (runs.isEmpty()) {
+            buffer.sort(BY_KEY);
+            return buffer.iterator();
+        }
+        if (!buffer.isEmpty()) {
+            spill();
+        }
+
+        while (runs.size() > fanIn) {
+            List<Run> pass = new ArrayList<>();
+            for (int from = 0; from < runs.size(); from += fanIn) {
+                List<Run> group = runs.subList(from, Math.min(runs.size(), from + fanIn));
+                if (group.size() == 1) {
+                    pass.add(group.get(0));
+                    continue;
+                }
+                pass.add(write(merge(group), group.stream().mapToLong(r -> r.size).sum()));
+                merged++;
+                for (Run run : group) {
+                    run.file.delete();
+                }
+            }
+            runs.clear();
+            runs.addAll(pass);
+        }
+        return merge(runs);
+    }
+
+    // Ties go to the earlier run, which holds the records added first
+    private Iterator<String[]> merge(List<Run> group) throws IOException {
+        PriorityQueue<RunReader> queue = new PriorityQueue<>(
+                Comparator.comparing((RunReader r) -> r.current[0]).thenComparingInt(r -> r.index));
+        for (int i = 0; i < group.size(); i++) {
+            RunReader reader = new RunReader(group.get(i).file, i);
+            if (reader.advance()) {
+                queue.add(reader);
+            }
+        }
+
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return !queue.isEmpty();
+            }
+
+            @Override
+            public String[] next() {
+                RunReader reader = queue.poll();
+                if (reader == null) {
+                    throw new NoSuchElementException();
+                }
+                String[] record = reader.current;
+                try {
+                    if (reader.advance()) {
+                        queue.add(reader);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return record;
+            }
+        };
+    }
+
+    private void spill() throws IOException {
+        buffer.sort(BY_KEY);
+        runs.add(write(buffer.iterator(), buffer.size()));
+        spilled++;
+        buffer = new ArrayList<>();
+    }
+
+    private Run write(Iterator<String[]> records, long count) throws IOException {
+        File run = Files.createTempFile(directory.toPath(), "run", ".bin").toFile();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 1 << 16))) {
+            out.writeLong(count);
+            while (records.hasNext()) {
+                for (String value : records.next()) {
+                    out.writeUTF(value);
+                }
+            }
+        }
+        return new Run(run, count);
+    }
+
+    private class RunReader {
+        final int index;
+        final DataInputStream in;
+        long remaining;
+        String[] current;
+
+        RunReader(File run, int index) throws IOException {
+            this.index = index;
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), 1 << 16));
+            this.remaining = in.readLong();
+        }
+
+        boolean advance() throws IOException {
+            if (remaining-- == 0) {
+                in.close();
+                return false;
+            }
+            current = new String[arity];
+            for (int i = 0; i < arity; i++) {
+                current[i] = in.readUTF();
+            }
+            return true;
+        }
+    }
+
+    @Override
+    public void close() {
+        for (Run run : runs) {
+            run.file.delete();
+        }
+        runs.clear();
+        buffer.clear();
+    }
+}
@@ -0,0 +1,574 @@
+package sdm.knowledge;
+
+import com.opencsv.CSVWriter;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.apache.jena.vocabulary.OWL;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+// Citation and co-authorship metrics computed outside of Jena. The cites, authors, submitted_as and
+// submitted_to triples are read once into a snapshot where papers, authors and venues are numbered from 0 and
+// the edges are CSR arrays (the neighbours of vertex v are targets[offsets[v]] to targets[offsets[v + 1] - 1]).
+// The metrics then run over the arrays on a fork-join pool:
+//   - PageRank of the papers over the citations, pulling from the citing papers so no vertex is written twice;
+//   - citations and h-index of every author, from the citations of their papers;
+//   - connected components of the co-author graph, with a lock-free union-find over the papers' authors;
+//   - papers, citations, citations per paper and h-index of every venue.
+// The results are written back as datatype properties (pagerank, citation_count, h_index,
+// coauthor_component, venue_impact, venue_h_index) and can be exported as csvs.
+public class GraphAnalytics {
+    public static final String PAGERANK = TBox.NS + "pagerank";
+    public static final String CITATION_COUNT = TBox.NS + "citation_count";
+    public static final String H_INDEX = TBox.NS + "h_index";
+    public static final String COAUTHOR_COMPONENT = TBox.NS + "coauthor_component";
+    public static final String VENUE_IMPACT = TBox.NS + "venue_impact";
+    public static final String VENUE_H_INDEX = TBox.NS + "venue_h_index";
+
+    private static final double DAMPING = 0.85;
+    // Vertices below which a fork-join task runs its range itself
+    private static final int GRAIN = 4096;
+
+    private final ForkJoinPool pool;
+    private PipelineMetrics metrics = new PipelineMetrics();
+
+    // Snapshot
+    private final Map<Node, Integer> paperIds = new HashMap<>();
+    private final Map<Node, Integer> authorIds = new HashMap<>();
+    private final Map<Node, Integer> venueIds = new HashMap<>();
+    private final List<Node> papers = new ArrayList<>();
+    private final List<Node> authors = new ArrayList<>();
+    private final List<Node> venues = new ArrayList<>();
+    private Csr cites;
+    private Csr citedBy;
+    private Csr authorPapers;
+    private Csr paperAuthors;
+    private Csr venuePapers;
+
+    // Results
+    private double[] pagerank;
+    private int[] paperCitations;
+    private int[] authorCitations;
+    private int[] authorHIndex;
+    private int[] component;
+    private int components;
+    private int largestComponent;
+    private long[] venueCitations;
+    private int[] venueHIndex;
+
+    // Compressed sparse rows of the edges of a graph
+    static class Csr {
+        final int[] offsets;
+        final int[] targets;
+
+        Csr(int[] offsets, int[] targets) {
+            this.offsets = offsets;
+            this.targets = targets;
+        }
+
+        // Counting sort of the edges by source
+        static Csr of(int vertices, IntList sources, IntList targets) {
+            int[] offsets = new int[vertices + 1];
+            for (int i = 0; i < sources.size; i++) {
+                offsets[sources.values[i] + 1]++;
+            }
+            for (int v = 0; v < vertices; v++) {
+                offsets[v + 1] += offsets[v];
+            }
+            int[] next = Arrays.copyOf(offsets, vertices);
+            int[] sorted = new int[sources.size];
+            for (int i = 0; i < sources.size; i++) {
+                sorted[next[sources.values[i]]++] = targets.values[i];
+            }
+            return new Csr(offsets, sorted);
+        }
+
+        int degree(int v) {
+            return offsets[v + 1] - offsets[v];
+        }
+
+        int edges() {
+            return targets.length;
+        }
+    }
+
+    static class IntList {
+        int[] values = new int[1024];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Invalid arguments");
+            System.out.println("Usage: java GraphAnalytics <input paths> [options]");
+            System.out.println("\t <input paths>:      comma separated RDF files with the ABOX, e.g. ./src/main/resources/abox.ttl");
+            System.out.println("\t --output=<path>:    write the metrics as datatype property triples to <path>, see ABox --format.");
+            System.out.println("\t --format=<format>:  output format, see ABox. By default taken from the extension of --output.");
+            System.out.println("\t --csv=<folder>:     export papers.csv, authors.csv and venues.csv with the metrics to <folder>.");
+            System.out.println("\t --threads=<n>:      fork-join parallelism (default: available processors).");
+            System.out.println("\t --iterations=<n>:   most PageRank iterations (default 50).");
+            System.out.println("\t --top=<n>:          papers, authors and venues printed per metric (default 5).");
+            System.out.println("\t --metrics=<path>:   write a JSON report with the time of every stage to <path>.");
+            return;
+        }
+        Options options = new Options(args, 1);
+        PipelineMetrics metrics = new PipelineMetrics();
+        metrics.start("read");
+        Graph graph = GraphFactory.createGraphMem();
+        for (String input : args[0].split(",")) {
+            RDFDataMgr.read(graph, input);
+        }
+        metrics.end(graph.size());
+
+        GraphAnalytics analytics = new GraphAnalytics(options.getInt("threads", Runtime.getRuntime().availableProcessors()));
+        analytics.setMetrics(metrics);
+        analytics.run(graph, options.getInt("iterations", 50));
+        analytics.printTop(options.getInt("top", 5));
+
+        if (options.has("output")) {
+            String output = options.get("output", null);
+            Graph results = GraphFactory.createGraphMem();
+            analytics.addTo(results);
+            metrics.start("write");
+            OutputFormat.of(output, options.get("format", null)).write(output, results);
+            metrics.end(results.size());
+        }
+        if (options.has("csv")) {
+            analytics.writeCsv(options.get("csv", null));
+        }
+        if (options.has("metrics")) {
+            metrics.write(options.get("metrics", null));
+        }
+    }
+
+    public GraphAnalytics(int threads) {
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    // Takes the snapshot of graph and computes every metric
+    public void run(Graph graph, int iterations) {
+        long start = System.nanoTime();
+        snapshot(graph);
+        pagerank(iterations);
+        hIndex();
+        components();
+        venueImpact();
+        System.out.printf("Analyzed %d papers, %d citations, %d authors and %d venues in %.1fs%n",
+                papers.size(), cites.edges(), authors.size(), venues.size(), (System.nanoTime() - start) / 1e9);
+    }
+
+    // ---------------------
+    // ------Snapshot-------
+    // ---------------------
+
+    private void snapshot(Graph graph) {
+        metrics.start("snapshot");
+        Vocabulary v = new Vocabulary();
+        // Every paper has a submission, which also gives its venue
+        Map<Node, Node> submissionVenues = new HashMap<>();
+        graph.find(Node.ANY, v.submittedTo, Node.ANY).forEachRemaining(t -> submissionVenues.put(t.getSubject(), t.getObject()));
+        IntList venueSources = new IntList();
+        IntList venueTargets = new IntList();
+        graph.find(Node.ANY, v.submittedAs, Node.ANY).forEachRemaining(t -> {
+            int paper = id(t.getSubject(), paperIds, papers);
+            Node venue = submissionVenues.get(t.getObject());
+            if (venue != null) {
+                venueSources.add(id(venue, venueIds, venues));
+                venueTargets.add(paper);
+            }
+        });
+
+        IntList citing = new IntList();
+        IntList cited = new IntList();
+        graph.find(Node.ANY, v.cites, Node.ANY).forEachRemaining(t -> {
+            citing.add(id(t.getSubject(), paperIds, papers));
+            cited.add(id(t.getObject(), paperIds, papers));
+        });
+        IntList authorSources = new IntList();
+        IntList authorTargets = new IntList();
+        graph.find(Node.ANY, v.authors, Node.ANY).forEachRemaining(t -> {
+            authorSources.add(id(t.getSubject(), authorIds, authors));
+            authorTargets.add(id(t.getObject(), paperIds, papers));
+        });
+
+        cites = Csr.of(papers.size(), citing, cited);
+        citedBy = Csr.of(papers.size(), cited, citing);
+        authorPapers = Csr.of(authors.size(), authorSources, authorTargets);
+        paperAuthors = Csr.of(papers.size(), authorTargets, authorSources);
+        venuePapers = Csr.of(venues.size(), venueSources, venueTargets);
+        metrics.rows(citing.size + authorSources.size + venueSources.size);
+        metrics.end(0);
+    }
+
+    private static int id(Node node, Map<Node, Integer> ids, List<Node> nodes) {
+        Integer id = ids.get(node);
+        if (id == null) {
+            id = nodes.size();
+            ids.put(node, id);
+            nodes.add(node);
+        }
+        return id;
+    }
+
+    // ---------------------
+    // -------Metrics-------
+    // ---------------------
+
+    private void pagerank(int iterations) {
+        metrics.start("pagerank");
+        int n = papers.size();
+        double[] rank = new double[n];
+        double[] next = new double[n];
+        double[] share = new double[n];
+        Arrays.fill(rank, 1.0 / n);
+        int iteration = 0;
+        double delta = 1;
+        while (iteration < iterations && delta > 1e-10) {
+            double[] current = rank;
+            double[] updated = next;
+            forRange(n, (from, to) -> {
+                for (int p = from; p < to; p++) {
+                    int degree = cites.degree(p);
+                    share[p] = degree == 0 ? 0 : current[p] / degree;
+                }
+            });
+            // Papers that cite nothing spread their rank over all the papers
+            double dangling = sum(n, p -> cites.degree(p) == 0 ? current[p] : 0);
+            double base = (1 - DAMPING) / n + DAMPING * dangling / n;
+            forRange(n, (from, to) -> {
+                for (int p = from; p < to; p++) {
+                    double sum = 0;
+                    for (int e = citedBy.offsets[p]; e < citedBy.offsets[p + 1]; e++) {
+                        sum += share[citedBy.targets[e]];
+                    }
+                    updated[p] = base + DAMPING * sum;
+                }
+            });
+            delta = sum(n, p -> Math.abs(updated[p] - current[p]));
+            next = rank;
+            rank = updated;
+            iteration++;
+        }
+        pagerank = rank;
+        metrics.rows(n);
+        metrics.set("pagerank_iterations", iteration);
+        metrics.end(0);
+    }
+
+    private void hIndex() {
+        metrics.start("h_index");
+        paperCitations = new int[papers.size()];
+        forRange(papers.size(), (from, to) -> {
+            for (int p = from; p < to; p++) {
+                paperCitations[p] = citedBy.degree(p);
+            }
+        });
+        authorCitations = new int[authors.size()];
+        authorHIndex = new int[authors.size()];
+        forRange(authors.size(), (from, to) -> {
+            for (int a = from; a < to; a++) {
+                authorHIndex[a] = hIndex(authorPapers, a);
+                int citations = 0;
+                for (int e = authorPapers.offsets[a]; e < authorPapers.offsets[a + 1]; e++) {
+                    citations += paperCitations[authorPapers.targets[e]];
+                }
+                authorCitations[a] = citations;
+            }
+        });
+        metrics.rows(authors.size());
+        metrics.end(0);
+    }
+
+    // Largest h such that h of the papers of vertex v have at least h citations each
+    private int hIndex(Csr papersOf, int v) {
+        int[] citations = new int[papersOf.degree(v)];
+        for (int i = 0; i < citations.length; i++) {
+            citations[i] = paperCitations[papersOf.targets[papersOf.offsets[v] + i]];
+        }
+        Arrays.sort(citations);
+        int h = 0;
+        while (h < citations.length && citations[citations.length - 1 - h] > h) {
+            h++;
+        }
+        return h;
+    }
+
+    private void components() {
+        metrics.start("components");
+        int n = authors.size();
+        AtomicIntegerArray parent = new AtomicIntegerArray(n);
+        forRange(n, (from, to) -> {
+            for (int a = from; a < to; a++) parent.set(a, a);
+        });
+        // The authors of a paper are joined to its first author
+        forRange(papers.size(), (from, to) -> {
+            for (int p = from; p < to; p++) {
+                for (int e = paperAuthors.offsets[p] + 1; e < paperAuthors.offsets[p + 1]; e++) {
+                    union(parent, paperAuthors.targets[paperAuthors.offsets[p]], paperAuthors.targets[e]);
+                }
+            }
+        });
+        component = new int[n];
+        forRange(n, (from, to) -> {
+            for (int a = from; a < to; a++) component[a] = find(parent, a);
+        });
+        int[] sizes = new int[n];
+        components = 0;
+        largestComponent = 0;
+        for (int a = 0; a < n; a++) {
+            if (sizes[component[a]]++ == 0) components++;
+            largestComponent = Math.max(largestComponent, sizes[component[a]]);
+        }
+        metrics.rows(n);
+        metrics.set("coauthor_components", components);
+        metrics.set("largest_coauthor_component", largestComponent);
+        metrics.end(0);
+    }
+
+    // Roots only ever point to smaller roots, and a root is only replaced with compareAndSet, so concurrent
+    // unions cannot make a cycle or lose a link
+    private static void union(AtomicIntegerArray parent, int a, int b) {
+        while (true) {
+            a = find(parent, a);
+            b = find(parent, b);
+            if (a == b) return;
+            if (a < b) {
+                int swap = a;
+                a = b;
+                b = swap;
+            }
+            if (parent.compareAndSet(a, a, b)) return;
+        }
+    }
+
+    // Root of a, halving the path on the way
+    private static int find(AtomicIntegerArray parent, int a) {
+        while (true) {
+            int p = parent.get(a);
+            if (p == a) return a;
+            int grandparent = parent.get(p);
+            parent.compareAndSet(a, p, grandparent);
+            a = grandparent;
+        }
+    }
+
+    private void venueImpact() {
+        metrics.start("venue_impact");
+        venueCitations = new long[venues.size()];
+        venueHIndex = new int[venues.size()];
+        forRange(venues.size(), (from, to) -> {
+            for (int v = from; v < to; v++) {
+                long citations = 0;
+                for (int e = venuePapers.offsets[v]; e < venuePapers.offsets[v + 1]; e++) {
+                    citations += paperCitations[venuePapers.targets[e]];
+                }
+                venueCitations[v] = citations;
+                venueHIndex[v] = hIndex(venuePapers, v);
+            }
+        });
+        metrics.rows(venues.size());
+        metrics.end(0);
+    }
+
+    private double venueImpact(int v) {
+        int papers = venuePapers.degree(v);
+        return papers == 0 ? 0 : (double) venueCitations[v] / papers;
+    }
+
+    // ---------------------
+    // -----Fork-join-------
+    // ---------------------
+
+    private interface Range {
+        void run(int from, int to);
+    }
+
+    private interface Term {
+        double value(int i);
+    }
+
+    private void forRange(int n, Range body) {
+        pool.invoke(new RangeAction(0, n, body));
+    }
+
+    private double sum(int n, Term term) {
+        return pool.invoke(new SumTask(0, n, term));
+    }
+
+    @SuppressWarnings("serial")
+    private static class RangeAction extends RecursiveAction {
+        final int from;
+        final int to;
+        final Range body;
+
+        RangeAction(int from, int to, Range body) {
+            this.from = from;
+            this.to = to;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= GRAIN) {
+                body.run(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RangeAction(from, middle, body), new RangeAction(middle, to, body));
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static class SumTask extends RecursiveTask<Double> {
+        final int from;
+        final int to;
+        final Term term;
+
+        SumTask(int from, int to, Term term) {
+            this.from = from;
+            this.to = to;
+            this.term = term;
+        }
+
+        @Override
+        protected Double compute() {
+            if (to - from <= GRAIN) {
+                double sum = 0;
+                for (int i = from; i < to; i++) sum += term.value(i);
+                return sum;
+            }
+            int middle = (from + to) >>> 1;
+            SumTask left = new SumTask(from, middle, term);
+            left.fork();
+            return new SumTask(middle, to, term).compute() + left.join();
+        }
+    }
+
+    // ---------------------
+    // -------Results-------
+    // ---------------------
+
+    // Adds the metrics to graph as datatype property triples, with the declarations of the properties
+    public void addTo(Graph graph) {
+        Vocabulary v = new Vocabulary();
+        Node paper = NodeFactory.createURI(TBox.Classes.paper);
+        Node author = v.author;
+        Node venue = NodeFactory.createURI(TBox.Classes.venue);
+        declare(graph, PAGERANK, paper, XSDDatatype.XSDdouble);
+        declare(graph, CITATION_COUNT, paper, XSDDatatype.XSDint);
+        declare(graph, H_INDEX, author, XSDDatatype.XSDint);
+        declare(graph, COAUTHOR_COMPONENT, author, XSDDatatype.XSDint);
+        declare(graph, VENUE_IMPACT, venue, XSDDatatype.XSDdouble);
+        declare(graph, VENUE_H_INDEX, venue, XSDDatatype.XSDint);
+
+        Node pagerankProperty = NodeFactory.createURI(PAGERANK);
+        Node citationCount = NodeFactory.createURI(CITATION_COUNT);
+        for (int p = 0; p < papers.size(); p++) {
+            graph.add(Triple.create(papers.get(p), pagerankProperty, doubleLiteral(pagerank[p])));
+            graph.add(Triple.create(papers.get(p), citationCount, intLiteral(paperCitations[p])));
+        }
+        Node hIndex = NodeFactory.createURI(H_INDEX);
+        Node coauthorComponent = NodeFactory.createURI(COAUTHOR_COMPONENT);
+        for (int a = 0; a < authors.size(); a++) {
+            graph.add(Triple.create(authors.get(a), hIndex, intLiteral(authorHIndex[a])));
+            graph.add(Triple.create(authors.get(a), coauthorComponent, intLiteral(component[a])));
+        }
+        Node venueImpact = NodeFactory.createURI(VENUE_IMPACT);
+        Node venueHIndexProperty = NodeFactory.createURI(VENUE_H_INDEX);
+        for (int i = 0; i < venues.size(); i++) {
+            graph.add(Triple.create(venues.get(i), venueImpact, doubleLiteral(venueImpact(i))));
+            graph.add(Triple.create(venues.get(i), venueHIndexProperty, intLiteral(venueHIndex[i])));
+        }
+    }
+
+    private static void declare(Graph graph, String property, Node domain, XSDDatatype range) {
+        Node node = NodeFactory.createURI(property);
+        graph.add(Triple.create(node, RDF.type.asNode(), OWL.DatatypeProperty.asNode()));
+        graph.add(Triple.create(node, RDFS.domain.asNode(), domain));
+        graph.add(Triple.create(node, RDFS.range.asNode(), NodeFactory.createURI(range.getURI())));
+    }
+
+    private static Node doubleLiteral(double value) {
+        return NodeFactory.createLiteral(Double.toString(value), XSDDatatype.XSDdouble);
+    }
+
+    private static Node intLiteral(int value) {
+        return NodeFactory.createLiteral(Integer.toString(value), XSDDatatype.XSDint);
+    }
+
+    public void writeCsv(String folder) throws IOException {
+        String output = folder.endsWith("/") ? folder : folder + "/";
+        try (CSVWriter writer = new CSVWriter(new FileWriter(output + "papers.csv"))) {
+            writer.writeNext(new String[]{"Paper", "Citations", "PageRank"}, false);
+            for (int p = 0; p < papers.size(); p++) {
+                writer.writeNext(new String[]{papers.get(p).getURI(), String.valueOf(paperCitations[p]), String.valueOf(pagerank[p])}, false);
+            }
+        }
+        try (CSVWriter writer = new CSVWriter(new FileWriter(output + "authors.csv"))) {
+            writer.writeNext(new String[]{"Author", "Papers", "Citations", "H-index", "Component"}, false);
+            for (int a = 0; a < authors.size(); a++) {
+                writer.writeNext(new String[]{authors.get(a).getURI(), String.valueOf(authorPapers.degree(a)),
+                        String.valueOf(authorCitations[a]), String.valueOf(authorHIndex[a]), String.valueOf(component[a])}, false);
+            }
+        }
+        try (CSVWriter writer = new CSVWriter(new FileWriter(output + "venues.csv"))) {
+            writer.writeNext(new String[]{"Venue", "Papers", "Citations", "Impact", "H-index"}, false);
+            for (int v = 0; v < venues.size(); v++) {
+                writer.writeNext(new String[]{venues.get(v).getURI(), String.valueOf(venuePapers.degree(v)),
+                        String.valueOf(venueCitations[v]), String.valueOf(venueImpact(v)), String.valueOf(venueHIndex[v])}, false);
+            }
+        }
+    }
+
+    public void printTop(int top) {
+        System.out.printf("Co-author components: %d, the largest with %d of %d authors%n", components, largestComponent, authors.size());
+        System.out.println("Papers by PageRank:");
+        for (int p : top(papers.size(), top, p -> pagerank[p])) {
+            System.out.printf("\t %-50s %.6f (%d citations)%n", papers.get(p).getURI(), pagerank[p], paperCitations[p]);
+        }
+        System.out.println("Authors by h-index:");
+        for (int a : top(authors.size(), top, a -> authorHIndex[a] + authorCitations[a] / 1e9)) {
+            System.out.printf("\t %-50s %d (%d citations)%n", authors.get(a).getURI(), authorHIndex[a], authorCitations[a]);
+        }
+        System.out.println("Venues by citations per paper:");
+        for (int v : top(venues.size(), top, this::venueImpact)) {
+            System.out.printf("\t %-50s %.2f (%d papers, h-index %d)%n", venues.get(v).getURI(), venueImpact(v),
+                    venuePapers.degree(v), venueHIndex[v]);
+        }
+    }
+
+    private static List<Integer> top(int n, int k, Term score) {
+        PriorityQueue<Integer> best = new PriorityQueue<>(Comparator.comparingDouble(score::value));
+        for (int i = 0; i < n; i++) {
+            best.add(i);
+            if (best.size() > k) best.poll();
+        }
+        List<Integer> sorted = new ArrayList<>(best);
+        sorted.sort(Comparator.comparingDouble((Integer i) -> score.value(i)).reversed());
+        return sorted;
+    }
+}
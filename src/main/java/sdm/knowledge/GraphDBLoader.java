@@ -0,0 +1,173 @@
+package sdm.knowledge;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.util.Models;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.config.RepositoryConfig;
+import org.eclipse.rdf4j.repository.config.RepositoryConfigSchema;
+import org.eclipse.rdf4j.repository.manager.LocalRepositoryManager;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.Rio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+// Loads triples into a repository of an embedded GraphDB instance. Triples are collected in batches, each
+// batch is converted to RDF4J statements on a pool of converter threads while the previous batch is being
+// committed, and every batch is committed in its own transaction.
+public class GraphDBLoader implements AutoCloseable {
+    private final LocalRepositoryManager manager;
+    private final Repository repository;
+    private final ValueFactory vf = SimpleValueFactory.getInstance();
+    private final int batchSize;
+    private final ForkJoinPool converters;
+    private long loaded = 0;
+    private long batches = 0;
+    private long commitNanos = 0;
+
+    public GraphDBLoader(String baseDir, String repositoryId, String configPath, String ruleset, int batchSize, int converterThreads) throws IOException {
+        this.manager = new LocalRepositoryManager(new File(baseDir));
+        this.manager.init();
+        if (!manager.hasRepositoryConfig(repositoryId)) {
+            manager.addRepositoryConfig(readConfig(repositoryId, configPath, ruleset));
+        }
+        this.repository = manager.getRepository(repositoryId);
+        this.batchSize = batchSize;
+        this.converters = new ForkJoinPool(converterThreads);
+    }
+
+    private static RepositoryConfig readConfig(String repositoryId, String configPath, String ruleset) throws IOException {
+        String config;
+        if (configPath != null) {
+            config = Files.readString(Paths.get(configPath));
+        } else {
+            try (InputStream in = GraphDBLoader.class.getResourceAsStream("/graphdb-repository.ttl")) {
+                config = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        }
+        config = config.replace("%REPOSITORY_ID%", repositoryId).replace("%RULESET%", ruleset);
+
+        Model model = Rio.parse(new StringReader(config), "", RDFFormat.TURTLE);
+        Resource node = Models.subject(model.filter(null, RDF.TYPE, RepositoryConfigSchema.REPOSITORY))
+                .orElseThrow(() -> new IllegalArgumentException("No repository defined in the GraphDB configuration"));
+        return RepositoryConfig.create(model, node);
+    }
+
+    public Repository getRepository() {
+        return repository;
+    }
+
+    public long getLoaded() {
+        return loaded;
+    }
+
+    public long getBatches() {
+        return batches;
+    }
+
+    public double getCommitSeconds() {
+        return commitNanos / 1e9;
+    }
+
+    // The returned stream must be finished to commit the last batch.
+    public StreamRDF stream() {
+        return new StreamRDFBase() {
+            private List<Triple> batch = new ArrayList<>(batchSize);
+            private Future<List<Statement>> converting;
+
+            @Override
+            public void triple(Triple triple) {
+                batch.add(triple);
+                if (batch.size() == batchSize) {
+                    flush();
+                }
+            }
+
+            @Override
+            public void finish() {
+                if (!batch.isEmpty()) {
+                    flush();
+                }
+                commitPending();
+            }
+
+            private void flush() {
+                List<Triple> triples = batch;
+                batch = new ArrayList<>(batchSize);
+                commitPending();
+                converting = converters.submit(() -> triples.parallelStream().map(t -> toStatement(t)).collect(Collectors.toList()));
+            }
+
+            private void commitPending() {
+                if (converting == null) return;
+                try {
+                    commit(converting.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                } catch (ExecutionException e) {
+                    throw new RuntimeException(e.getCause());
+                }
+                converting = null;
+            }
+        };
+    }
+
+    private void commit(List<Statement> statements) {
+        long start = System.nanoTime();
+        try (RepositoryConnection connection = repository.getConnection()) {
+            connection.begin();
+            connection.add(statements);
+            connection.commit();
+        }
+        commitNanos += System.nanoTime() - start;
+        loaded += statements.size();
+        batches++;
+    }
+
+    private Statement toStatement(Triple triple) {
+        return vf.createStatement((Resource) toValue(triple.getSubject()), vf.createIRI(triple.getPredicate().getURI()), toValue(triple.getObject()));
+    }
+
+    private Value toValue(Node node) {
+        if (node.isURI()) {
+            return vf.createIRI(node.getURI());
+        }
+        if (node.isBlank()) {
+            return vf.createBNode(node.getBlankNodeLabel());
+        }
+        String language = node.getLiteralLanguage();
+        if (language != null && !language.isEmpty()) {
+            return vf.createLiteral(node.getLiteralLexicalForm(), language);
+        }
+        return vf.createLiteral(node.getLiteralLexicalForm(), vf.createIRI(node.getLiteralDatatypeURI()));
+    }
+
+    @Override
+    public void close() {
+        converters.shutdown();
+        manager.shutDown();
+    }
+}
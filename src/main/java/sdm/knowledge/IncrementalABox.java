@@ -0,0 +1,68 @@
+package sdm.knowledge;
+
+import com.opencsv.exceptions.CsvValidationException;
+import org.apache.jena.riot.system.StreamRDF;
+
+import java.io.IOException;
+import java.util.Map;
+
+// Runs the StreamingABox passes against the state saved by a previous run and only emits the triples of
+// rows that run did not see: papers with a new DOI, citation rows past the ones already read (the file is
+// expected to be appended to), reviews of papers without a revision and reviewers of papers not yet reviewed.
+// Citations and reviewers an earlier run could not link, because a paper or author was not there yet, are kept
+// in the state and retried once the new papers are in.
+public class IncrementalABox {
+    private final StreamingABox abox;
+    private final ABoxState state;
+    private long newPapers = 0;
+    private long newCitations = 0;
+    private long newReviewers = 0;
+
+    public IncrementalABox(StreamRDF out, ABoxState state, Vocabulary vocabulary) {
+        this.abox = new StreamingABox(out, state, vocabulary);
+        this.state = state;
+    }
+
+    public void populate(String dataPath) throws IOException, CsvValidationException {
+        populate(ABoxSource.csv(dataPath));
+    }
+
+    public void populate(ABoxSource source) throws IOException, CsvValidationException {
+
+        ABoxSource.Rows rows = source.papers();
+        Map<String, String> values;
+        long row = state.count("P");
+        while ((values = rows.next()) != null) {
+            if (state.hasPaper(values.get("DOI"))) continue;
+            abox.addPaperRow(values, row++);
+            newPapers++;
+        }
+
+        newCitations += abox.retryCitations();
+        rows = source.citations();
+        long seen = state.citationRows.get();
+        long index = 0;
+        while ((values = rows.next()) != null) {
+            if (index++ < seen) continue;
+            abox.addCitationRow(values);
+            newCitations++;
+        }
+
+        int revisions = state.count("R");
+        rows = source.reviews();
+        while ((values = rows.next()) != null) {
+            abox.addReviewRow(values);
+        }
+
+        abox.retryReviewers();
+        rows = source.reviewers();
+        while ((values = rows.next()) != null) {
+            if (state.isReviewed(values.get("Paper")) || state.hasPendingReviewers(values.get("Paper"))) continue;
+            abox.addReviewersRow(values);
+            newReviewers++;
+        }
+
+        System.out.printf("New papers: %d, citations: %d, revisions: %d, reviewer rows: %d (pending: %d citations, %d reviewers)%n",
+                newPapers, newCitations, state.count("R") - revisions, newReviewers, state.pendingCitations(), state.pendingReviewers());
+    }
+}
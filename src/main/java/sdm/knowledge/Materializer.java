@@ -0,0 +1,261 @@
+package sdm.knowledge;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.apache.jena.vocabulary.OWL;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+import org.apache.jena.vocabulary.XSD;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Forward chains the inverse properties, rdfs:subClassOf and rdfs:subPropertyOf hierarchies and the domains and
+// ranges of the TBOX into a graph, so it can be queried without a reasoner. The schema is compiled up front into
+// one rule per asserted predicate that already holds the closure of the hierarchies (e.g. authors gives
+// authored_by in the other direction, Author and Academic for the subject and Paper for the object), which is
+// why a single pass over the asserted triples reaches the fixpoint. Chunks of triples are matched on a thread
+// pool and the inferred triples are added to the graph on the calling thread.
+public class Materializer {
+    private static final Node TYPE = RDF.type.asNode();
+
+    private final Map<Node, Rule> rules = new HashMap<>();
+    private final Map<Node, Set<Node>> superClasses = new HashMap<>();
+    private final int threads;
+    private final int chunkSize;
+    private PipelineMetrics metrics = new PipelineMetrics();
+
+    private static class Derived {
+        final Node property;
+        final boolean inverted;
+
+        Derived(Node property, boolean inverted) {
+            this.property = property;
+            this.inverted = inverted;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Derived && ((Derived) o).property.equals(property) && ((Derived) o).inverted == inverted;
+        }
+
+        @Override
+        public int hashCode() {
+            return property.hashCode() * 2 + (inverted ? 1 : 0);
+        }
+    }
+
+    // What a triple with a given predicate implies: the other properties that hold between its subject and
+    // object, and the types of both
+    private static class Rule {
+        final List<Derived> properties = new ArrayList<>();
+        final Set<Node> subjectTypes = new LinkedHashSet<>();
+        final Set<Node> objectTypes = new LinkedHashSet<>();
+
+        boolean isEmpty() {
+            return properties.isEmpty() && subjectTypes.isEmpty() && objectTypes.isEmpty();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Invalid arguments");
+            System.out.println("Usage: java Materializer <input paths> <output path>");
+            System.out.println("\t <input paths>:     comma separated RDF files with the TBOX and the ABOX.");
+            System.out.println("\t                    ./src/main/resources/tbox.ttl,./src/main/resources/abox.ttl");
+            System.out.println("\t <output path>:     path to file where the asserted and inferred triples will be saved to.");
+            System.out.println("\t --format=<format>: output format, see ABox. By default taken from the extension of <output path>.");
+            System.out.println("\t --threads=<n>:     match chunks of triples on <n> threads (default: available processors).");
+            System.out.println("\t --chunk=<triples>: triples per chunk (default 100000).");
+            return;
+        }
+        Options options = new Options(args, 2);
+        Graph graph = GraphFactory.createGraphMem();
+        for (String input : args[0].split(",")) {
+            RDFDataMgr.read(graph, input);
+        }
+        Materializer materializer = new Materializer(graph,
+                options.getInt("threads", Runtime.getRuntime().availableProcessors()), options.getInt("chunk", 100000));
+        materializer.materialize(graph);
+        OutputFormat.of(args[1], options.get("format", null)).write(args[1], graph);
+    }
+
+    // Compiles the rules from the TBOX triples in schema
+    public Materializer(Graph schema, int threads, int chunkSize) {
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+
+        Map<Node, Set<Node>> superProperties = direct(schema, RDFS.subPropertyOf.asNode());
+        Map<Node, Set<Node>> subClassOf = direct(schema, RDFS.subClassOf.asNode());
+        Map<Node, Set<Node>> domains = direct(schema, RDFS.domain.asNode());
+        Map<Node, Set<Node>> ranges = direct(schema, RDFS.range.asNode());
+        Map<Node, Set<Node>> inverses = new HashMap<>();
+        direct(schema, OWL.inverseOf.asNode()).forEach((property, inverseOf) -> {
+            for (Node inverse : inverseOf) {
+                inverses.computeIfAbsent(property, p -> new HashSet<>()).add(inverse);
+                inverses.computeIfAbsent(inverse, p -> new HashSet<>()).add(property);
+            }
+        });
+
+        for (Node c : subClassOf.keySet()) {
+            superClasses.put(c, closure(c, subClassOf));
+        }
+
+        Set<Node> properties = new HashSet<>();
+        properties.addAll(superProperties.keySet());
+        properties.addAll(inverses.keySet());
+        properties.addAll(domains.keySet());
+        properties.addAll(ranges.keySet());
+        for (Node property : properties) {
+            Rule rule = compile(property, superProperties, inverses, domains, ranges);
+            if (!rule.isEmpty()) {
+                rules.put(property, rule);
+            }
+        }
+    }
+
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    // Adds the inferred triples to graph and returns how many of them were not in it yet
+    public long materialize(Graph graph) {
+        metrics.start("materialize");
+        long start = System.nanoTime();
+        List<Triple> asserted = graph.find().toList();
+        metrics.rows(asserted.size());
+
+        List<Set<Triple>> inferred = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Set<Triple>>> chunks = new ArrayList<>();
+            for (int from = 0; from < asserted.size(); from += chunkSize) {
+                List<Triple> chunk = asserted.subList(from, Math.min(asserted.size(), from + chunkSize));
+                chunks.add(executor.submit(() -> infer(chunk)));
+            }
+            for (Future<Set<Triple>> chunk : chunks) {
+                inferred.add(chunk.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+
+        long before = graph.size();
+        for (Set<Triple> chunk : inferred) {
+            chunk.forEach(graph::add);
+        }
+        long added = graph.size() - before;
+        metrics.end(added);
+        System.out.printf("Materialized %d triples from %d in %.1fs%n", added, asserted.size(), (System.nanoTime() - start) / 1e9);
+        return added;
+    }
+
+    // The triples the rules infer from the given ones, which may include some of them
+    Set<Triple> infer(List<Triple> triples) {
+        Set<Triple> inferred = new LinkedHashSet<>();
+        for (Triple triple : triples) {
+            Node s = triple.getSubject();
+            Node p = triple.getPredicate();
+            Node o = triple.getObject();
+            if (p.equals(TYPE)) {
+                for (Node c : superClasses.getOrDefault(o, Collections.emptySet())) {
+                    inferred.add(Triple.create(s, TYPE, c));
+                }
+                continue;
+            }
+            Rule rule = rules.get(p);
+            if (rule == null) continue;
+            boolean resource = !o.isLiteral();
+            for (Derived derived : rule.properties) {
+                if (!derived.inverted) {
+                    inferred.add(Triple.create(s, derived.property, o));
+                } else if (resource) {
+                    inferred.add(Triple.create(o, derived.property, s));
+                }
+            }
+            for (Node c : rule.subjectTypes) {
+                inferred.add(Triple.create(s, TYPE, c));
+            }
+            if (resource) {
+                for (Node c : rule.objectTypes) {
+                    inferred.add(Triple.create(o, TYPE, c));
+                }
+            }
+        }
+        return inferred;
+    }
+
+    private Rule compile(Node property, Map<Node, Set<Node>> superProperties, Map<Node, Set<Node>> inverses,
+                         Map<Node, Set<Node>> domains, Map<Node, Set<Node>> ranges) {
+        // Every property that holds, possibly in the other direction, once property does
+        Set<Derived> reached = new LinkedHashSet<>();
+        Deque<Derived> pending = new ArrayDeque<>();
+        pending.add(new Derived(property, false));
+        while (!pending.isEmpty()) {
+            Derived derived = pending.poll();
+            if (!reached.add(derived)) continue;
+            for (Node superProperty : superProperties.getOrDefault(derived.property, Collections.emptySet())) {
+                pending.add(new Derived(superProperty, derived.inverted));
+            }
+            for (Node inverse : inverses.getOrDefault(derived.property, Collections.emptySet())) {
+                pending.add(new Derived(inverse, !derived.inverted));
+            }
+        }
+
+        Rule rule = new Rule();
+        for (Derived derived : reached) {
+            if (!derived.property.equals(property) || derived.inverted) {
+                rule.properties.add(derived);
+            }
+            Set<Node> subjectClasses = (derived.inverted ? ranges : domains).getOrDefault(derived.property, Collections.emptySet());
+            Set<Node> objectClasses = (derived.inverted ? domains : ranges).getOrDefault(derived.property, Collections.emptySet());
+            addTypes(rule.subjectTypes, subjectClasses);
+            addTypes(rule.objectTypes, objectClasses);
+        }
+        // Literal ranges such as xsd:string are datatypes, not classes of the object
+        rule.objectTypes.removeIf(c -> c.getURI().startsWith(XSD.getURI()) || c.equals(RDFS.Literal.asNode()));
+        return rule;
+    }
+
+    private void addTypes(Set<Node> types, Set<Node> classes) {
+        for (Node c : classes) {
+            types.add(c);
+            types.addAll(superClasses.getOrDefault(c, Collections.emptySet()));
+        }
+    }
+
+    // Direct links between named resources, leaving out the anonymous classes of restrictions and unions
+    private static Map<Node, Set<Node>> direct(Graph schema, Node predicate) {
+        Map<Node, Set<Node>> links = new HashMap<>();
+        schema.find(Node.ANY, predicate, Node.ANY).forEachRemaining(t -> {
+            if (t.getSubject().isURI() && t.getObject().isURI() && !t.getSubject().equals(t.getObject())) {
+                links.computeIfAbsent(t.getSubject(), s -> new LinkedHashSet<>()).add(t.getObject());
+            }
+        });
+        return links;
+    }
+
+    private static Set<Node> closure(Node start, Map<Node, Set<Node>> links) {
+        Set<Node> reached = new LinkedHashSet<>();
+        Deque<Node> pending = new ArrayDeque<>(links.getOrDefault(start, Collections.emptySet()));
+        while (!pending.isEmpty()) {
+            Node next = pending.poll();
+            if (!next.equals(start) && reached.add(next)) {
+                pending.addAll(links.getOrDefault(next, Collections.emptySet()));
+            }
+        }
+        return reached;
+    }
+}
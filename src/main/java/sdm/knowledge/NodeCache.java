@@ -0,0 +1,96 @@
+package sdm.knowledge;
+
+import org.apache.jena.datatypes.RDFDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Interns the IRIs and typed literals the builders make over and over (authors, reviewers, dates, years,
+// volumes), so every occurrence shares one Node and minted IRIs are only URL encoded once. The cache is a
+// fixed array indexed by hash where a new value replaces the one in its slot, so it never grows and needs no
+// locks: slots hold immutable entries and a race only costs a miss.
+public class NodeCache {
+    public static final int DEFAULT_SIZE = 1 << 16;
+
+    private static final class Entry {
+        final String prefix;
+        final String key;
+        final RDFDatatype type;
+        final Node node;
+
+        Entry(String prefix, String key, RDFDatatype type, Node node) {
+            this.prefix = prefix;
+            this.key = key;
+            this.type = type;
+            this.node = node;
+        }
+    }
+
+    private final Entry[] entries;
+    private final int mask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    // size is rounded up to a power of two
+    public NodeCache(int size) {
+        int capacity = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+        this.entries = new Entry[capacity];
+        this.mask = capacity - 1;
+    }
+
+    public Node uri(String iri) {
+        Entry entry = entries[slot(null, iri, null)];
+        if (entry != null && entry.prefix == null && entry.type == null && entry.key.equals(iri)) {
+            hits.increment();
+            return entry.node;
+        }
+        return put(null, iri, null, NodeFactory.createURI(iri));
+    }
+
+    // The IRI ABox.name(prefix, id) mints
+    public Node uri(String prefix, String id) {
+        Entry entry = entries[slot(prefix, id, null)];
+        if (entry != null && prefix.equals(entry.prefix) && entry.key.equals(id)) {
+            hits.increment();
+            return entry.node;
+        }
+        return put(prefix, id, null, NodeFactory.createURI(ABox.name(prefix, id)));
+    }
+
+    public Node literal(String lexical, RDFDatatype type) {
+        Entry entry = entries[slot(null, lexical, type)];
+        if (entry != null && entry.type == type && entry.key.equals(lexical)) {
+            hits.increment();
+            return entry.node;
+        }
+        return put(null, lexical, type, NodeFactory.createLiteral(lexical, type));
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    // Hits and misses go to the metrics report as node_cache_hits and node_cache_misses
+    public void report(PipelineMetrics metrics) {
+        metrics.set("node_cache_hits", hits());
+        metrics.set("node_cache_misses", misses());
+    }
+
+    private Node put(String prefix, String key, RDFDatatype type, Node node) {
+        misses.increment();
+        entries[slot(prefix, key, type)] = new Entry(prefix, key, type, node);
+        return node;
+    }
+
+    private int slot(String prefix, String key, RDFDatatype type) {
+        int hash = key.hashCode();
+        if (prefix != null) hash = hash * 31 + prefix.hashCode();
+        if (type != null) hash = hash * 31 + type.hashCode();
+        return (hash ^ hash >>> 16) & mask;
+    }
+}
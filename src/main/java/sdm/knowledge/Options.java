@@ -0,0 +1,37 @@
+package sdm.knowledge;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Optional "--name" and "--name=value" arguments given after the positional ones.
+class Options {
+    private final Map<String, String> values = new HashMap<>();
+
+    Options(String[] args, int positional) {
+        for (int i = positional; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + arg);
+            }
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                values.put(arg.substring(2), "");
+            } else {
+                values.put(arg.substring(2, eq), arg.substring(eq + 1));
+            }
+        }
+    }
+
+    boolean has(String name) {
+        return values.containsKey(name);
+    }
+
+    String get(String name, String defaultValue) {
+        return values.getOrDefault(name, defaultValue);
+    }
+
+    int getInt(String name, int defaultValue) {
+        String value = values.get(name);
+        return value == null || value.isEmpty() ? defaultValue : Integer.parseInt(value);
+    }
+}
@@ -0,0 +1,103 @@
+package sdm.knowledge;
+
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Serialization used by the TBox and ABox writers. The syntax comes from the --format flag or the file
+// extension, and a trailing .gz or .zst compresses the output while it is written.
+public class OutputFormat {
+
+    public enum Compression {NONE, GZIP, ZSTD}
+
+    private final RDFFormat format;
+    private final Compression compression;
+
+    public OutputFormat(RDFFormat format, Compression compression) {
+        this.format = format;
+        this.compression = compression;
+    }
+
+    public static OutputFormat of(String path, String flag) {
+        Compression compression = Compression.NONE;
+        String name = path.toLowerCase();
+        if (name.endsWith(".gz")) {
+            compression = Compression.GZIP;
+            name = name.substring(0, name.length() - 3);
+        } else if (name.endsWith(".zst")) {
+            compression = Compression.ZSTD;
+            name = name.substring(0, name.length() - 4);
+        }
+        return new OutputFormat(flag != null ? byName(flag) : byExtension(name), compression);
+    }
+
+    private static RDFFormat byName(String name) {
+        switch (name) {
+            case "turtle":
+                return RDFFormat.TURTLE;
+            case "turtle-blocks":
+                return RDFFormat.TURTLE_BLOCKS;
+            case "ntriples":
+                return RDFFormat.NTRIPLES;
+            case "thrift":
+                return RDFFormat.RDF_THRIFT;
+            case "protobuf":
+                return RDFFormat.RDF_PROTO;
+            default:
+                throw new IllegalArgumentException("Unknown output format: " + name);
+        }
+    }
+
+    private static RDFFormat byExtension(String name) {
+        if (name.endsWith(".nt")) return RDFFormat.NTRIPLES;
+        if (name.endsWith(".trdf") || name.endsWith(".rt")) return RDFFormat.RDF_THRIFT;
+        if (name.endsWith(".rpb") || name.endsWith(".pbrdf")) return RDFFormat.RDF_PROTO;
+        return RDFFormat.TURTLE;
+    }
+
+    public RDFFormat getFormat() {
+        return format;
+    }
+
+    public OutputStream open(String path) throws IOException {
+        OutputStream output = new FileOutputStream(path);
+        switch (compression) {
+            case GZIP:
+                output = new GZIPOutputStream(output, 1 << 16);
+                break;
+            case ZSTD:
+                output = new ZstdCompressorOutputStream(output);
+                break;
+        }
+        return new BufferedOutputStream(output, 1 << 16);
+    }
+
+    // Pretty Turtle needs the whole graph, so streams fall back to Turtle blocks.
+    public StreamRDF stream(OutputStream output) {
+        RDFFormat streamFormat = format == RDFFormat.TURTLE ? RDFFormat.TURTLE_BLOCKS : format;
+        return StreamRDFWriter.getWriterStream(output, streamFormat);
+    }
+
+    public void write(String path, Graph graph) throws IOException {
+        try (OutputStream output = open(path)) {
+            if (StreamRDFWriter.registered(format)) {
+                StreamRDF writer = stream(output);
+                writer.start();
+                graph.getPrefixMapping().getNsPrefixMap().forEach(writer::prefix);
+                graph.find().forEachRemaining(writer::triple);
+                writer.finish();
+            } else {
+                RDFDataMgr.write(output, graph, format);
+            }
+        }
+    }
+}
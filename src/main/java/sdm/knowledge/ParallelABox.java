@@ -0,0 +1,186 @@
+package sdm.knowledge;
+
+import com.opencsv.exceptions.CsvValidationException;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.sparql.graph.GraphFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.ObjLongConsumer;
+
+// Splits the csvs into chunks of rows and builds each chunk into its own graph on a thread pool. Workers
+// share one ABoxState, so venues, authors and fields are only created by the first worker that sees them.
+// Venues and fields are numbered, and the rows that create venue publications chosen, on the reading thread in
+// input order, so the output does not depend on which worker gets to an entity first and is the one of StreamingABox.
+// The chunk graphs are merged into the output on the calling thread, in input order, so the output sink
+// does not need to be thread safe.
+public class ParallelABox {
+    private final StreamRDF out;
+    private final ABoxState state;
+    private final Vocabulary vocabulary;
+    private final int threads;
+    private final int chunkSize;
+    private CitationJoin citationJoin;
+    private PipelineMetrics metrics = new PipelineMetrics();
+
+    public ParallelABox(StreamRDF out, int threads, int chunkSize) {
+        this(out, new ABoxState(), new Vocabulary(), threads, chunkSize);
+    }
+
+    public ParallelABox(StreamRDF out, ABoxState state, Vocabulary vocabulary, int threads, int chunkSize) {
+        this.out = out;
+        this.state = state;
+        this.vocabulary = vocabulary;
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+    }
+
+    public ABoxState getState() {
+        return state;
+    }
+
+    public void setCitationJoin(CitationJoin citationJoin) {
+        this.citationJoin = citationJoin;
+    }
+
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void populate(String dataPath) throws IOException, CsvValidationException {
+        populate(ABoxSource.csv(dataPath));
+    }
+
+    public void populate(ABoxSource source) throws IOException, CsvValidationException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            metrics.start("papers");
+            StreamingABox reader = new StreamingABox(out, state, vocabulary);
+            processChunked(executor, source.papers(), reader::registerPaperRow, (abox, row) -> {
+                abox.addPaperRow(row.values, row.index);
+                if (citationJoin != null) {
+                    addPaper(row.values.get("DOI"));
+                }
+            });
+            metrics.start("citations");
+            if (citationJoin != null) {
+                // The join sorts and merges on this thread
+                ABoxSource.Rows rows = source.citations();
+                Map<String, String> values;
+                while ((values = rows.next()) != null) {
+                    metrics.row();
+                    citationJoin.addCitation(values.get("Paper"), values.get("Citation"));
+                    state.citationRows.incrementAndGet();
+                }
+            } else {
+                processChunked(executor, source.citations(), null, (abox, row) -> abox.addCitationRow(row.values));
+            }
+            StreamingABox.reportCitations(state, citationJoin, metrics);
+
+            // Only the first accepted review of a paper creates its revision, so this pass keeps the file order.
+            metrics.start("revisions");
+            StreamingABox reviews = new StreamingABox(out, state, vocabulary);
+            reviews.setMetrics(metrics);
+            ABoxSource.Rows rows = source.reviews();
+            Map<String, String> values;
+            while ((values = rows.next()) != null) {
+                metrics.row();
+                reviews.addReviewRow(values);
+            }
+
+            metrics.start("reviewers");
+            processChunked(executor, source.reviewers(), null, (abox, row) -> abox.addReviewersRow(row.values));
+            StreamingABox.reportReviewers(state, metrics);
+            metrics.end(0);
+            metrics.entities(state.counters);
+            vocabulary.nodes.report(metrics);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void addPaper(String doi) {
+        try {
+            citationJoin.addPaper(doi, state.paper(doi));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static class Row {
+        final Map<String, String> values;
+        final long index;
+
+        Row(Map<String, String> values, long index) {
+            this.values = values;
+            this.index = index;
+        }
+    }
+
+    // register, when given, is called on this thread with every row in input order before the row is submitted
+    private void processChunked(ExecutorService executor, ABoxSource.Rows rows, ObjLongConsumer<Map<String, String>> register,
+                                BiConsumer<StreamingABox, Row> handler) throws IOException, CsvValidationException {
+        Deque<Future<Graph>> pending = new ArrayDeque<>();
+        List<Row> chunk = new ArrayList<>(chunkSize);
+        Map<String, String> values;
+        long index = 0;
+        while ((values = rows.next()) != null) {
+            metrics.row();
+            if (register != null) {
+                register.accept(values, index);
+            }
+            // Sources may reuse the map of a row
+            chunk.add(new Row(new HashMap<>(values), index++));
+            if (chunk.size() == chunkSize) {
+                pending.add(submit(executor, chunk, handler));
+                chunk = new ArrayList<>(chunkSize);
+                // Bound the number of chunks held in memory
+                if (pending.size() >= threads * 2) {
+                    merge(pending.poll());
+                }
+            }
+        }
+        if (!chunk.isEmpty()) {
+            pending.add(submit(executor, chunk, handler));
+        }
+        while (!pending.isEmpty()) {
+            merge(pending.poll());
+        }
+    }
+
+    private Future<Graph> submit(ExecutorService executor, List<Row> chunk, BiConsumer<StreamingABox, Row> handler) {
+        return executor.submit(() -> {
+            Graph graph = GraphFactory.createGraphMem();
+            StreamingABox abox = new StreamingABox(StreamRDFLib.graph(graph), state, vocabulary);
+            abox.setMetrics(metrics);
+            for (Row row : chunk) {
+                handler.accept(abox, row);
+            }
+            return graph;
+        });
+    }
+
+    private void merge(Future<Graph> chunk) {
+        try {
+            chunk.get().find().forEachRemaining(out::triple);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package sdm.knowledge;
+
+import org.apache.jena.atlas.json.JSON;
+import org.apache.jena.atlas.json.JsonArray;
+import org.apache.jena.atlas.json.JsonNumber;
+import org.apache.jena.atlas.json.JsonObject;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+// Times the stages of an ABox build and counts the rows read and triples produced in each of them, with heap,
+// GC and allocation snapshots taken when a stage ends. Rows and triples can be counted from any thread. The
+// report is written as JSON and the current stage can be logged periodically while the build runs.
+public class PipelineMetrics {
+    private final long start = System.nanoTime();
+    private final List<Stage> stages = new ArrayList<>();
+    private final Map<String, Long> entities = new TreeMap<>();
+    private final Map<String, Long> values = new TreeMap<>();
+    private volatile Stage current;
+    private ScheduledExecutorService progress;
+
+    public static class Stage {
+        final String name;
+        final long start = System.nanoTime();
+        final long gcCountStart = gcCount();
+        final long gcMillisStart = gcMillis();
+        final long allocatedStart = allocatedBytes();
+        final AtomicLong rows = new AtomicLong();
+        final AtomicLong triples = new AtomicLong();
+        LongSupplier live;
+        long end;
+        long gcCount;
+        long gcMillis;
+        long heapUsed;
+        long allocated;
+
+        Stage(String name) {
+            this.name = name;
+        }
+
+        double seconds() {
+            return ((end == 0 ? System.nanoTime() : end) - start) / 1e9;
+        }
+
+        long triples() {
+            return live != null && end == 0 ? live.getAsLong() : triples.get();
+        }
+    }
+
+    // Ends the current stage, if any, and starts a new one
+    public synchronized void start(String name) {
+        end(0);
+        current = new Stage(name);
+        stages.add(current);
+    }
+
+    // For stages whose triples are not counted as they are produced, e.g. while filling a model: the supplier
+    // gives the number of triples so far to the progress log
+    public synchronized void start(String name, LongSupplier triples) {
+        start(name);
+        current.live = triples;
+    }
+
+    // Ends the current stage adding the triples that were not counted while it ran
+    public synchronized void end(long triples) {
+        Stage stage = current;
+        if (stage == null) return;
+        stage.triples.addAndGet(triples);
+        stage.end = System.nanoTime();
+        stage.gcCount = gcCount() - stage.gcCountStart;
+        stage.gcMillis = gcMillis() - stage.gcMillisStart;
+        stage.heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        stage.allocated = allocatedBytes() - stage.allocatedStart;
+        current = null;
+    }
+
+    public void row() {
+        Stage stage = current;
+        if (stage != null) stage.rows.incrementAndGet();
+    }
+
+    public void rows(long rows) {
+        Stage stage = current;
+        if (stage != null) stage.rows.addAndGet(rows);
+    }
+
+    public void triple() {
+        Stage stage = current;
+        if (stage != null) stage.triples.incrementAndGet();
+    }
+
+    public void triples(long triples) {
+        Stage stage = current;
+        if (stage != null) stage.triples.addAndGet(triples);
+    }
+
+    // Number of individuals created per name prefix (P, Sub, R, V, H, F...)
+    public synchronized void entities(Map<String, ? extends Number> counts) {
+        counts.forEach((prefix, count) -> entities.put(prefix, count.longValue()));
+    }
+
+    public synchronized void set(String name, long value) {
+        values.put(name, value);
+    }
+
+    public void startProgress(int seconds) {
+        progress = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        progress.scheduleAtFixedRate(this::logProgress, seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    public void stopProgress() {
+        if (progress != null) {
+            progress.shutdownNow();
+        }
+    }
+
+    private void logProgress() {
+        Stage stage = current;
+        if (stage == null) return;
+        double seconds = stage.seconds();
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        System.out.printf("[%s] %.0fs, %,d rows (%,.0f/s), %,d triples (%,.0f/s), heap %,d MB of %,d MB%n",
+                stage.name, seconds, stage.rows.get(), stage.rows.get() / seconds, stage.triples(), stage.triples() / seconds,
+                heap.getUsed() >> 20, heap.getMax() >> 20);
+    }
+
+    // ---------------------
+    // -------Report--------
+    // ---------------------
+
+    public synchronized JsonObject toJson() {
+        JsonObject report = new JsonObject();
+        report.put("total_seconds", JsonNumber.value((System.nanoTime() - start) / 1e9));
+
+        JsonArray stageArray = new JsonArray();
+        for (Stage stage : stages) {
+            JsonObject s = new JsonObject();
+            double seconds = stage.seconds();
+            s.put("name", stage.name);
+            s.put("seconds", JsonNumber.value(seconds));
+            s.put("rows", stage.rows.get());
+            s.put("rows_per_second", JsonNumber.value(stage.rows.get() / seconds));
+            s.put("triples", stage.triples.get());
+            s.put("triples_per_second", JsonNumber.value(stage.triples.get() / seconds));
+            s.put("heap_used_bytes", stage.heapUsed);
+            s.put("gc_count", stage.gcCount);
+            s.put("gc_millis", stage.gcMillis);
+            s.put("allocated_bytes", stage.allocated);
+            stageArray.add(s);
+        }
+        report.put("stages", stageArray);
+
+        JsonObject entityObject = new JsonObject();
+        entities.forEach(entityObject::put);
+        report.put("entities", entityObject);
+        values.forEach(report::put);
+
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        JsonObject heapObject = new JsonObject();
+        heapObject.put("used_bytes", heap.getUsed());
+        heapObject.put("committed_bytes", heap.getCommitted());
+        heapObject.put("max_bytes", heap.getMax());
+        report.put("heap", heapObject);
+
+        JsonArray collectors = new JsonArray();
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            JsonObject collector = new JsonObject();
+            collector.put("name", gc.getName());
+            collector.put("count", gc.getCollectionCount());
+            collector.put("millis", gc.getCollectionTime());
+            collectors.add(collector);
+        }
+        report.put("gc", collectors);
+        return report;
+    }
+
+    public void write(String path) throws IOException {
+        try (OutputStream out = new FileOutputStream(path)) {
+            JSON.write(out, toJson());
+        }
+    }
+
+    // Bytes allocated so far by the live threads. Threads that end during a stage take their share with them,
+    // so worker pools should be measured before they are shut down.
+    private static long allocatedBytes() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) return 0;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) return 0;
+        long bytes = 0;
+        for (long allocated : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            bytes += Math.max(0, allocated);
+        }
+        return bytes;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+}
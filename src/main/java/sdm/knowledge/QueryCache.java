@@ -0,0 +1,446 @@
+package sdm.knowledge;
+
+import org.apache.jena.atlas.json.JsonNumber;
+import org.apache.jena.atlas.json.JsonObject;
+import org.apache.jena.dboe.transaction.txn.Transaction;
+import org.apache.jena.dboe.transaction.txn.TransactionCoordinator;
+import org.apache.jena.dboe.transaction.txn.TransactionListener;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.GraphListener;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.*;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.sparql.ARQInternalErrorException;
+import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphWrapper;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.*;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.iterator.QueryIterPlainWrapper;
+import org.apache.jena.sparql.engine.main.QueryEngineMain;
+import org.apache.jena.sparql.util.Context;
+import org.apache.jena.sparql.util.Symbol;
+import org.apache.jena.sys.JenaSystem;
+import org.apache.jena.system.Txn;
+import org.apache.jena.tdb2.sys.TDBInternal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// Caches the results of SELECT queries over a dataset. Entries are keyed on the normalized query text and the
+// bound parameters and remember the graph version they were computed at; any change to the data moves the
+// version on, so older entries miss and are dropped. The version follows write commits of TDB2 datasets
+// through a TransactionListener and changes to graph backed datasets (DatasetFactory.wrap(model)) through a
+// GraphListener. Other in-memory datasets, like createTxnMem(), must be written through dataset(). Writes to a
+// TDB2 dataset by another process, like ABox --tdb2 reloading it, are seen on the next lookup from the version
+// file TDB2Loader rewrites after every commit. Other writes the cache cannot see need invalidate().
+//
+// The cache is kept in the context of the dataset, and every SELECT executed over it, e.g. by Fuseki in
+// SparqlServer, is answered from the cache.
+public class QueryCache {
+    public enum Policy {LRU, LFU}
+
+    static final Symbol CACHE = Symbol.create("sdm:queryCache");
+    // Set on the executions of the cache itself, which have to reach the dataset
+    private static final Symbol UNCACHED = Symbol.create("sdm:uncached");
+
+    static {
+        JenaSystem.init();
+        QueryEngineRegistry.addFactory(new CachedEngine());
+    }
+
+    private final Dataset dataset;
+    private final Dataset monitored;
+    private final int maxEntries;
+    private final int maxRows;
+    private final Policy policy;
+    private final AtomicLong version = new AtomicLong();
+    private final Path versionFile;
+    private volatile FileTime storeVersion;
+    private final Map<String, String> normalized = new ConcurrentHashMap<>();
+    // Access ordered, which gives the LRU order; LFU eviction looks at the hit counts instead
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong uncacheable = new AtomicLong();
+
+    private static class Key {
+        final String query;
+        final SortedMap<String, RDFNode> parameters;
+
+        Key(String query, Map<String, RDFNode> parameters) {
+            this.query = query;
+            this.parameters = new TreeMap<>(parameters);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).query.equals(query) && ((Key) o).parameters.equals(parameters);
+        }
+
+        @Override
+        public int hashCode() {
+            return query.hashCode() * 31 + parameters.hashCode();
+        }
+    }
+
+    private static class Entry {
+        final long version;
+        final List<Var> vars;
+        final List<Binding> rows;
+        long hits = 0;
+
+        Entry(long version, List<Var> vars, List<Binding> rows) {
+            this.version = version;
+            this.vars = vars;
+            this.rows = rows;
+        }
+    }
+
+    public QueryCache(Dataset dataset, int maxEntries, int maxRows, Policy policy) {
+        this.dataset = dataset;
+        this.maxEntries = maxEntries;
+        this.maxRows = maxRows;
+        this.policy = policy;
+
+        DatasetGraph dsg = dataset.asDatasetGraph();
+        if (TDBInternal.isTDB2(dsg)) {
+            versionFile = TDB2Loader.versionFile(TDBInternal.getDatabaseContainer(dsg).getLocation().getDirectoryPath());
+            storeVersion = lastModified(versionFile);
+            TransactionCoordinator coordinator = TDBInternal.getTransactionCoordinator(dsg);
+            coordinator.modifyConfig(() -> coordinator.addListener(new TransactionListener() {
+                @Override
+                public void notifyCommitFinish(Transaction transaction) {
+                    if (transaction.isWriteTxn()) invalidate();
+                }
+            }));
+        } else {
+            versionFile = null;
+            watch(dsg.getDefaultGraph());
+        }
+        this.monitored = DatasetFactory.wrap(new VersionDataset(dsg));
+        dsg.getContext().set(CACHE, this);
+    }
+
+    // The dataset with every change made through it invalidating the cache
+    public Dataset dataset() {
+        return monitored;
+    }
+
+    // Also invalidate the cache on changes to this graph, e.g. the graph of the OntModel ABox writes to
+    public void watch(Graph graph) {
+        graph.getEventManager().register(new VersionListener());
+    }
+
+    public long version() {
+        return version.get();
+    }
+
+    public void invalidate() {
+        version.incrementAndGet();
+    }
+
+    public ResultSet select(String query) {
+        return select(query, Collections.emptyMap());
+    }
+
+    // The parameters are substituted for the variables of the same name before the query is run
+    public ResultSet select(String query, Map<String, RDFNode> parameters) {
+        Entry entry = lookup(new Key(normalize(query), parameters));
+        return ResultSetStream.create(entry.vars, entry.rows.iterator());
+    }
+
+    private Entry lookup(Key key) {
+        checkStore();
+        long current = version.get();
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.version == current) {
+                entry.hits++;
+                hits.incrementAndGet();
+                return entry;
+            }
+            if (entry != null) {
+                entries.remove(key);
+                invalidations.incrementAndGet();
+            }
+        }
+        misses.incrementAndGet();
+
+        Entry entry = run(key, current);
+        if (entry.rows.size() > maxRows) {
+            uncacheable.incrementAndGet();
+        } else if (version.get() == current) {
+            // Results computed while the data changed are returned but not kept
+            synchronized (this) {
+                entries.put(key, entry);
+                evict();
+            }
+        }
+        return entry;
+    }
+
+    // Invalidates the cache if the version file of the store changed since the last lookup
+    private void checkStore() {
+        if (versionFile == null) return;
+        FileTime time = lastModified(versionFile);
+        if (!Objects.equals(time, storeVersion)) {
+            storeVersion = time;
+            invalidate();
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            // Not written yet, e.g. a store loaded before there was a version file
+            return null;
+        }
+    }
+
+    private Entry run(Key key, long current) {
+        Supplier<Entry> execute = () -> {
+            QueryExecutionDatasetBuilder builder = QueryExecutionDatasetBuilder.create().query(key.query).dataset(dataset)
+                    .set(UNCACHED, true);
+            key.parameters.forEach(builder::substitution);
+            try (QueryExecution execution = builder.build()) {
+                ResultSet results = execution.execSelect();
+                List<Var> vars = Var.varList(results.getResultVars());
+                List<Binding> rows = new ArrayList<>();
+                while (results.hasNext()) {
+                    rows.add(results.nextBinding());
+                }
+                return new Entry(current, vars, rows);
+            }
+        };
+        return dataset.supportsTransactions() && !dataset.isInTransaction() ? Txn.calculateRead(dataset, execute) : execute.get();
+    }
+
+    private void evict() {
+        while (entries.size() > maxEntries) {
+            Key victim = null;
+            if (policy == Policy.LRU) {
+                victim = entries.keySet().iterator().next();
+            } else {
+                long fewest = Long.MAX_VALUE;
+                for (Map.Entry<Key, Entry> e : entries.entrySet()) {
+                    // Ties go to the least recently used, which comes first
+                    if (e.getValue().hits < fewest) {
+                        fewest = e.getValue().hits;
+                        victim = e.getKey();
+                    }
+                }
+            }
+            entries.remove(victim);
+            evictions.incrementAndGet();
+        }
+    }
+
+    // Only SELECT queries are cached, the others should be run on the dataset directly
+    public boolean accepts(String query) {
+        return !normalized(query).isEmpty();
+    }
+
+    private String normalize(String query) {
+        String text = normalized(query);
+        if (text.isEmpty()) {
+            throw new IllegalArgumentException("Only SELECT queries are cached");
+        }
+        return text;
+    }
+
+    // Query text as written by the parser, so spacing, comments and prefix usage do not change the key. Empty
+    // for queries that are not SELECTs.
+    private String normalized(String query) {
+        String text = normalized.get(query);
+        if (text == null) {
+            Query parsed = QueryFactory.create(query);
+            text = parsed.isSelectType() ? parsed.serialize() : "";
+            if (normalized.size() < maxEntries * 4) {
+                normalized.put(query, text);
+            }
+        }
+        return text;
+    }
+
+    // ---------------------
+    // -------Metrics-------
+    // ---------------------
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        json.put("hits", hits.get());
+        json.put("misses", misses.get());
+        json.put("hit_ratio", JsonNumber.value(hitRatio()));
+        json.put("evictions", evictions.get());
+        json.put("invalidations", invalidations.get());
+        json.put("uncacheable", uncacheable.get());
+        json.put("entries", size());
+        json.put("version", version.get());
+        return json;
+    }
+
+    public String stats() {
+        return String.format("Cache: %d hits, %d misses (%.1f%% hits), %d evictions, %d invalidated, %d too large, %d entries, version %d",
+                hits.get(), misses.get(), hitRatio() * 100, evictions.get(), invalidations.get(), uncacheable.get(), size(), version.get());
+    }
+
+    private double hitRatio() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+
+    // Invalidates the cache on every change made through the dataset
+    private class VersionDataset extends DatasetGraphWrapper {
+        VersionDataset(DatasetGraph dsg) {
+            super(dsg);
+        }
+
+        @Override
+        public void add(Quad quad) {
+            invalidate();
+            super.add(quad);
+        }
+
+        @Override
+        public void add(Node g, Node s, Node p, Node o) {
+            invalidate();
+            super.add(g, s, p, o);
+        }
+
+        @Override
+        public void delete(Quad quad) {
+            invalidate();
+            super.delete(quad);
+        }
+
+        @Override
+        public void delete(Node g, Node s, Node p, Node o) {
+            invalidate();
+            super.delete(g, s, p, o);
+        }
+
+        @Override
+        public void deleteAny(Node g, Node s, Node p, Node o) {
+            invalidate();
+            super.deleteAny(g, s, p, o);
+        }
+
+        @Override
+        public void clear() {
+            invalidate();
+            super.clear();
+        }
+    }
+
+    // Answers the SELECT queries over a dataset with a cache in its context from the cache. Executions with an
+    // initial binding are not in the key, so they are run by the main engine.
+    private static class CachedEngine implements QueryEngineFactory {
+        @Override
+        public boolean accept(Query query, DatasetGraph dsg, Context context) {
+            return query.isSelectType() && context.get(CACHE) != null && !context.isTrue(UNCACHED);
+        }
+
+        @Override
+        public Plan create(Query query, DatasetGraph dsg, Binding binding, Context context) {
+            if (binding != null && !binding.isEmpty()) {
+                return QueryEngineMain.getFactory().create(query, dsg, binding, context);
+            }
+            QueryCache cache = context.get(CACHE);
+            Entry entry = cache.lookup(new Key(query.serialize(), Collections.emptyMap()));
+            return new PlanOp(null, null, QueryIterPlainWrapper.create(entry.rows.iterator()));
+        }
+
+        @Override
+        public boolean accept(Op op, DatasetGraph dsg, Context context) {
+            return false;
+        }
+
+        @Override
+        public Plan create(Op op, DatasetGraph dsg, Binding binding, Context context) {
+            throw new ARQInternalErrorException("The query cache only answers queries");
+        }
+    }
+
+    private class VersionListener implements GraphListener {
+        @Override
+        public void notifyAddTriple(Graph g, Triple t) {
+            invalidate();
+        }
+
+        @Override
+        public void notifyAddArray(Graph g, Triple[] triples) {
+            invalidate();
+        }
+
+        @Override
+        public void notifyAddList(Graph g, List<Triple> triples) {
+            invalidate();
+        }
+
+        @Override
+        public void notifyAddIterator(Graph g, Iterator<Triple> it) {
+            invalidate();
+        }
+
+        @Override
+        public void notifyAddGraph(Graph g, Graph added) {
+            invalidate();
+        }
+
+        @Override
+        public void notifyDeleteTriple(Graph g, Triple t) {
+            invalidate();
+        }
+
+        @Override
+        public void notifyDeleteList(Graph g, List<Triple> L) {
+            invalidate();
+        }
+
+        @Override
+        public void notifyDeleteArray(Graph g, Triple[] triples) {
+            invalidate();
+        }
+
+        @Override
+        public void notifyDeleteIterator(Graph g, Iterator<Triple> it) {
+            invalidate();
+        }
+
+        @Override
+        public void notifyDeleteGraph(Graph g, Graph removed) {
+            invalidate();
+        }
+
+        @Override
+        public void notifyEvent(Graph source, Object value) {
+            invalidate();
+        }
+    }
+}
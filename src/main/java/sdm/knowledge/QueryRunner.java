@@ -0,0 +1,398 @@
+package sdm.knowledge;
+
+import org.apache.jena.atlas.json.JSON;
+import org.apache.jena.atlas.json.JsonArray;
+import org.apache.jena.atlas.json.JsonNumber;
+import org.apache.jena.atlas.json.JsonObject;
+import org.apache.jena.atlas.json.JsonValue;
+import org.apache.jena.query.*;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.system.Txn;
+import org.apache.jena.tdb2.TDB2Factory;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.BooleanQuery;
+import org.eclipse.rdf4j.query.GraphQuery;
+import org.eclipse.rdf4j.query.GraphQueryResult;
+import org.eclipse.rdf4j.query.TupleQuery;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.manager.LocalRepositoryManager;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+// Runs the queries of a .sparql file (like queries.sparql) as a workload and reports latency percentiles and
+// throughput per query and concurrency level. The file may hold several queries one after the other; the
+// prefixes before the first one are shared by all of them. Placeholders like "fd:<insert author id here ...>"
+// are replaced by a different author on every execution.
+public class QueryRunner {
+    private static final Pattern QUERY_START = Pattern.compile("^\\s*(SELECT|ASK|CONSTRUCT|DESCRIBE)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern AUTHOR_PLACEHOLDER = Pattern.compile("fd:<insert author id[^>]*>");
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Invalid arguments");
+            System.out.println("Usage: java QueryRunner <queries path> (--memory=<files> | --tdb2=<dir> | --graphdb=<dir>) [options]");
+            System.out.println("\t <queries path>:     file with one or more SPARQL queries, e.g. ./queries.sparql");
+            System.out.println("\t --memory=<files>:   comma separated RDF files (TBOX, ABOX) loaded into an in-memory dataset.");
+            System.out.println("\t --tdb2=<dir>:       TDB2 database directory, e.g. one loaded with ABox --tdb2.");
+            System.out.println("\t --graphdb=<dir>:    base directory of an embedded GraphDB, e.g. one loaded with ABox --graphdb.");
+            System.out.println("\t --repository=<id>:  GraphDB repository (default kg).");
+            System.out.println("\t --warmup=<n>:       executions of every query before measuring (default 5).");
+            System.out.println("\t --runs=<n>:         measured executions of every query per concurrency level (default 50).");
+            System.out.println("\t --concurrency=<l>:  comma separated numbers of threads running the query at once (default 1).");
+            System.out.println("\t --authors=<ids>:    comma separated author ids (e.g. A15848771600) for the author placeholder.");
+            System.out.println("\t                     By default up to 100 authors are taken from the data.");
+            System.out.println("\t --report=<path>:    also write the results as JSON to <path>.");
+            System.out.println("\t --cache=<entries>:  cache the results of SELECT queries, up to <entries> results (memory and tdb2 only).");
+            System.out.println("\t --cache-rows=<n>:   largest result kept in the cache, in rows (default 10000).");
+            System.out.println("\t --cache-policy=<p>: eviction policy of the cache, lru or lfu (default lru).");
+            return;
+        }
+        Options options = new Options(args, 1);
+        List<Query> queries = parse(Files.readString(Paths.get(args[0])));
+        int warmup = options.getInt("warmup", 5);
+        int runs = options.getInt("runs", 50);
+        int[] levels = Arrays.stream(options.get("concurrency", "1").split(",")).mapToInt(Integer::parseInt).toArray();
+
+        try (Target target = open(options)) {
+            List<String> authors = options.has("authors")
+                    ? Arrays.stream(options.get("authors", "").split(",")).map(ABox::name).collect(Collectors.toList())
+                    : target.values(PREFIXES + "SELECT ?a WHERE { ?a a fd:Author } LIMIT 100", "a");
+
+            JsonArray report = new JsonArray();
+            System.out.printf("%-6s %6s %6s %9s %10s %10s %10s %10s%n", "query", "conc", "runs", "results", "p50 ms", "p95 ms", "p99 ms", "qps");
+            for (Query query : queries) {
+                if (query.parameterized && authors.isEmpty()) {
+                    System.out.printf("%-6s skipped, no authors for the placeholder%n", query.name);
+                    continue;
+                }
+                AtomicInteger next = new AtomicInteger();
+                for (int i = 0; i < warmup; i++) {
+                    target.execute(query.text(authors, next.getAndIncrement()));
+                }
+                for (int level : levels) {
+                    Result result = measure(target, query, authors, next, runs, level);
+                    System.out.printf("%-6s %6d %6d %9d %10.2f %10.2f %10.2f %10.1f%n", query.name, level, runs, result.rows,
+                            result.percentile(50), result.percentile(95), result.percentile(99), result.throughput());
+                    report.add(result.toJson(query.name, level));
+                }
+            }
+
+            JsonValue output = report;
+            QueryCache cache = target.cache();
+            if (cache != null) {
+                System.out.println(cache.stats());
+                JsonObject withCache = new JsonObject();
+                withCache.put("results", report);
+                withCache.put("cache", cache.toJson());
+                output = withCache;
+            }
+            if (options.has("report")) {
+                try (OutputStream out = new FileOutputStream(options.get("report", null))) {
+                    JSON.write(out, output);
+                }
+            }
+        }
+    }
+
+    private static final String PREFIXES = "PREFIX fd: <" + TBox.NS + ">\n";
+
+    // ---------------------
+    // -------Queries-------
+    // ---------------------
+
+    static class Query {
+        final String name;
+        final String template;
+        final boolean parameterized;
+
+        Query(String name, String template) {
+            this.name = name;
+            this.template = template;
+            this.parameterized = AUTHOR_PLACEHOLDER.matcher(template).find();
+        }
+
+        // The query with the placeholder replaced by one of the authors, chosen round robin
+        String text(List<String> authors, int execution) {
+            if (!parameterized) return template;
+            String author = authors.get(Math.floorMod(execution, authors.size()));
+            return AUTHOR_PLACEHOLDER.matcher(template).replaceAll(Matcher.quoteReplacement("<" + author + ">"));
+        }
+    }
+
+    static List<Query> parse(String file) {
+        StringBuilder prologue = new StringBuilder();
+        List<StringBuilder> bodies = new ArrayList<>();
+        for (String line : file.split("\\R")) {
+            if (QUERY_START.matcher(line).find()) {
+                bodies.add(new StringBuilder());
+            }
+            (bodies.isEmpty() ? prologue : bodies.get(bodies.size() - 1)).append(line).append('\n');
+        }
+
+        List<Query> queries = new ArrayList<>();
+        for (StringBuilder body : bodies) {
+            queries.add(new Query("Q" + (queries.size() + 1), prologue + body.toString().trim() + "\n"));
+        }
+        return queries;
+    }
+
+    // ---------------------
+    // ----Measurement------
+    // ---------------------
+
+    static class Result {
+        final long[] nanos;
+        final long wallNanos;
+        final long rows;
+
+        Result(long[] nanos, long wallNanos, long rows) {
+            this.nanos = nanos;
+            this.wallNanos = wallNanos;
+            this.rows = rows;
+            Arrays.sort(this.nanos);
+        }
+
+        // Nearest rank percentile in milliseconds
+        double percentile(double p) {
+            int rank = (int) Math.ceil(p / 100 * nanos.length);
+            return nanos[Math.max(0, Math.min(nanos.length - 1, rank - 1))] / 1e6;
+        }
+
+        double throughput() {
+            return nanos.length / (wallNanos / 1e9);
+        }
+
+        JsonObject toJson(String query, int concurrency) {
+            JsonObject json = new JsonObject();
+            json.put("query", query);
+            json.put("concurrency", concurrency);
+            json.put("runs", nanos.length);
+            json.put("results", rows);
+            json.put("p50_ms", JsonNumber.value(percentile(50)));
+            json.put("p95_ms", JsonNumber.value(percentile(95)));
+            json.put("p99_ms", JsonNumber.value(percentile(99)));
+            json.put("max_ms", JsonNumber.value(nanos[nanos.length - 1] / 1e6));
+            json.put("queries_per_second", JsonNumber.value(throughput()));
+            return json;
+        }
+    }
+
+    private static Result measure(Target target, Query query, List<String> authors, AtomicInteger next, int runs, int concurrency)
+            throws InterruptedException, ExecutionException {
+        long[] nanos = new long[runs];
+        AtomicInteger index = new AtomicInteger();
+        long[] rows = new long[1];
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int t = 0; t < concurrency; t++) {
+                workers.add(executor.submit(() -> {
+                    int i;
+                    while ((i = index.getAndIncrement()) < runs) {
+                        String text = query.text(authors, next.getAndIncrement());
+                        long begin = System.nanoTime();
+                        long count = target.execute(text);
+                        nanos[i] = System.nanoTime() - begin;
+                        if (i == 0) rows[0] = count;
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+            return new Result(nanos, System.nanoTime() - start, rows[0]);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // ---------------------
+    // -------Targets-------
+    // ---------------------
+
+    interface Target extends AutoCloseable {
+        // Runs the query to completion and returns the number of results
+        long execute(String query);
+
+        List<String> values(String query, String variable);
+
+        default QueryCache cache() {
+            return null;
+        }
+
+        @Override
+        void close();
+    }
+
+    private static Target open(Options options) throws IOException {
+        if (options.has("memory")) {
+            Dataset dataset = DatasetFactory.createTxnMem();
+            Txn.executeWrite(dataset, () -> {
+                for (String file : options.get("memory", "").split(",")) {
+                    RDFDataMgr.read(dataset.getDefaultModel(), file);
+                }
+            });
+            return new JenaTarget(dataset, cache(dataset, options));
+        }
+        if (options.has("tdb2")) {
+            Dataset dataset = TDB2Factory.connectDataset(options.get("tdb2", null));
+            return new JenaTarget(dataset, cache(dataset, options));
+        }
+        if (options.has("graphdb")) {
+            return new GraphDBTarget(options.get("graphdb", null), options.get("repository", "kg"));
+        }
+        throw new IllegalArgumentException("One of --memory, --tdb2 or --graphdb is needed");
+    }
+
+    static QueryCache cache(Dataset dataset, Options options) {
+        if (!options.has("cache")) return null;
+        QueryCache.Policy policy = QueryCache.Policy.valueOf(options.get("cache-policy", "lru").toUpperCase());
+        return new QueryCache(dataset, options.getInt("cache", 1000), options.getInt("cache-rows", 10000), policy);
+    }
+
+    static class JenaTarget implements Target {
+        private final Dataset dataset;
+        private final QueryCache cache;
+
+        JenaTarget(Dataset dataset, QueryCache cache) {
+            this.dataset = dataset;
+            this.cache = cache;
+        }
+
+        @Override
+        public QueryCache cache() {
+            return cache;
+        }
+
+        @Override
+        public long execute(String query) {
+            if (cache != null && cache.accepts(query)) {
+                ResultSet results = cache.select(query);
+                long count = 0;
+                while (results.hasNext()) {
+                    results.next();
+                    count++;
+                }
+                return count;
+            }
+            return Txn.calculateRead(dataset, () -> {
+                try (QueryExecution execution = QueryExecutionFactory.create(query, dataset)) {
+                    org.apache.jena.query.Query parsed = execution.getQuery();
+                    if (parsed.isSelectType()) {
+                        ResultSet results = execution.execSelect();
+                        long count = 0;
+                        while (results.hasNext()) {
+                            results.next();
+                            count++;
+                        }
+                        return count;
+                    }
+                    if (parsed.isAskType()) {
+                        return execution.execAsk() ? 1L : 0L;
+                    }
+                    if (parsed.isConstructType()) {
+                        return execution.execConstruct().size();
+                    }
+                    return execution.execDescribe().size();
+                }
+            });
+        }
+
+        @Override
+        public List<String> values(String query, String variable) {
+            return Txn.calculateRead(dataset, () -> {
+                List<String> values = new ArrayList<>();
+                try (QueryExecution execution = QueryExecutionFactory.create(query, dataset)) {
+                    execution.execSelect().forEachRemaining(solution -> {
+                        RDFNode node = solution.get(variable);
+                        if (node != null && node.isURIResource()) values.add(node.asResource().getURI());
+                    });
+                }
+                return values;
+            });
+        }
+
+        @Override
+        public void close() {
+            dataset.close();
+        }
+    }
+
+    static class GraphDBTarget implements Target {
+        private final LocalRepositoryManager manager;
+        private final Repository repository;
+
+        GraphDBTarget(String baseDir, String repositoryId) {
+            this.manager = new LocalRepositoryManager(new File(baseDir));
+            this.manager.init();
+            this.repository = manager.getRepository(repositoryId);
+            if (repository == null) {
+                manager.shutDown();
+                throw new IllegalArgumentException("No repository " + repositoryId + " in " + baseDir);
+            }
+        }
+
+        // Only SELECT queries are counted row by row, the others are evaluated and count as one result
+        @Override
+        public long execute(String query) {
+            try (RepositoryConnection connection = repository.getConnection()) {
+                org.eclipse.rdf4j.query.Query prepared = connection.prepareQuery(query);
+                if (prepared instanceof TupleQuery) {
+                    try (TupleQueryResult results = ((TupleQuery) prepared).evaluate()) {
+                        long count = 0;
+                        while (results.hasNext()) {
+                            results.next();
+                            count++;
+                        }
+                        return count;
+                    }
+                }
+                if (prepared instanceof BooleanQuery) {
+                    return ((BooleanQuery) prepared).evaluate() ? 1 : 0;
+                }
+                try (GraphQueryResult results = ((GraphQuery) prepared).evaluate()) {
+                    long count = 0;
+                    while (results.hasNext()) {
+                        results.next();
+                        count++;
+                    }
+                    return count;
+                }
+            }
+        }
+
+        @Override
+        public List<String> values(String query, String variable) {
+            List<String> values = new ArrayList<>();
+            try (RepositoryConnection connection = repository.getConnection();
+                 TupleQueryResult results = connection.prepareTupleQuery(query).evaluate()) {
+                while (results.hasNext()) {
+                    BindingSet solution = results.next();
+                    if (solution.hasBinding(variable)) values.add(solution.getValue(variable).stringValue());
+                }
+            }
+            return values;
+        }
+
+        @Override
+        public void close() {
+            manager.shutDown();
+        }
+    }
+}
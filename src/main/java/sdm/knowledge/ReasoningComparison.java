@@ -0,0 +1,156 @@
+package sdm.knowledge;
+
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.atlas.json.JSON;
+import org.apache.jena.atlas.json.JsonArray;
+import org.apache.jena.atlas.json.JsonNumber;
+import org.apache.jena.atlas.json.JsonObject;
+import org.apache.jena.ontology.OntModel;
+import org.apache.jena.query.QueryCancelledException;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.RDFDataMgr;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+// Loads the same TBOX and ABOX under every reasoning profile and reports the time to load and prepare the
+// model, the heap it takes, how many triples it stores (or entails, with --closure) and the latency of the
+// queries of a .sparql file.
+public class ReasoningComparison {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.out.println("Invalid arguments");
+            System.out.println("Usage: java ReasoningComparison <TBOX path> <ABOX path> <queries path>");
+            System.out.println("\t <TBOX path>:        path to the TBOX, e.g. ./src/main/resources/tbox.ttl");
+            System.out.println("\t <ABOX path>:        path to the ABOX built without inference, e.g. ./src/main/resources/abox.ttl");
+            System.out.println("\t <queries path>:     file with one or more SPARQL queries, e.g. ./queries.sparql");
+            System.out.println("\t --profiles=<list>:  comma separated profiles to compare, see ABox --profile (default: all but owl-full,");
+            System.out.println("\t                     whose backward rules can run for many minutes on a single query).");
+            System.out.println("\t --runs=<n>:         measured executions of every query (default 10).");
+            System.out.println("\t --timeout=<s>:      give up on a query after <s> seconds (default 60). Only checked between results.");
+            System.out.println("\t --threads=<n>:      threads of the materialized profile (default: available processors).");
+            System.out.println("\t --closure:          report the number of entailed triples instead of the stored ones. Lists the whole");
+            System.out.println("\t                     closure, which needs a lot of heap with owl-micro, owl-mini and owl-full.");
+            System.out.println("\t --report=<path>:    also write the results as JSON to <path>.");
+            return;
+        }
+        Options options = new Options(args, 3);
+        List<QueryRunner.Query> queries = QueryRunner.parse(Files.readString(Paths.get(args[2])));
+        List<ReasoningProfile> profiles = options.has("profiles")
+                ? Arrays.stream(options.get("profiles", "").split(",")).map(ReasoningProfile::of).collect(Collectors.toList())
+                : Arrays.stream(ReasoningProfile.values()).filter(p -> p != ReasoningProfile.FULL).collect(Collectors.toList());
+        int runs = options.getInt("runs", 10);
+        int timeout = options.getInt("timeout", 60);
+        int threads = options.getInt("threads", Runtime.getRuntime().availableProcessors());
+        boolean closure = options.has("closure");
+
+        JsonArray report = new JsonArray();
+        System.out.printf("%-12s %8s %9s %10s  %s%n", "profile", "load s", "heap MB", "triples", "query p50 ms (results)");
+        for (ReasoningProfile profile : profiles) {
+            long heapBefore = usedHeap();
+            long start = System.nanoTime();
+            Model base = ModelFactory.createDefaultModel();
+            RDFDataMgr.read(base, args[0]);
+            RDFDataMgr.read(base, args[1]);
+            OntModel model = profile.over(base, threads);
+            model.prepare();
+            double loadSeconds = (System.nanoTime() - start) / 1e9;
+            long heap = usedHeap() - heapBefore;
+            // Listing everything makes the backward rules derive the whole closure, which the OWL rule reasoners
+            // may not fit in the heap
+            long triples = closure ? Iter.count(model.getGraph().find()) : base.size();
+
+            JsonObject json = new JsonObject();
+            json.put("profile", profile.name().toLowerCase());
+            json.put("load_seconds", JsonNumber.value(loadSeconds));
+            json.put("heap_bytes", heap);
+            json.put(closure ? "entailed_triples" : "stored_triples", triples);
+            JsonArray queryArray = new JsonArray();
+            StringBuilder line = new StringBuilder();
+            List<String> authors = authors(model);
+            for (QueryRunner.Query query : queries) {
+                JsonObject q = measure(model, query, authors, runs, timeout);
+                queryArray.add(q);
+                line.append(String.format("  %s %s (%d)", query.name,
+                        q.hasKey("p50_ms") ? String.format("%.2f", q.get("p50_ms").getAsNumber().value().doubleValue()) : "timeout",
+                        q.get("results").getAsNumber().value().longValue()));
+            }
+            json.put("queries", queryArray);
+            report.add(json);
+            System.out.printf("%-12s %8.2f %9d %10d %s%n", profile.name().toLowerCase(), loadSeconds, heap >> 20, triples, line);
+
+            model.close();
+        }
+
+        if (options.has("report")) {
+            try (OutputStream out = new FileOutputStream(options.get("report", null))) {
+                JSON.write(out, report);
+            }
+        }
+    }
+
+    private static JsonObject measure(OntModel model, QueryRunner.Query query, List<String> authors, int runs, int timeout) {
+        JsonObject json = new JsonObject();
+        json.put("query", query.name);
+        long[] nanos = new long[runs];
+        long results = 0;
+        try {
+            for (int i = 0; i < runs; i++) {
+                long begin = System.nanoTime();
+                results = count(model, query.text(authors, i), timeout);
+                nanos[i] = System.nanoTime() - begin;
+            }
+        } catch (QueryCancelledException e) {
+            json.put("results", results);
+            json.put("timed_out", true);
+            return json;
+        }
+        Arrays.sort(nanos);
+        json.put("results", results);
+        json.put("p50_ms", JsonNumber.value(nanos[(runs - 1) / 2] / 1e6));
+        json.put("max_ms", JsonNumber.value(nanos[runs - 1] / 1e6));
+        return json;
+    }
+
+    private static long count(Model model, String query, int timeout) {
+        try (QueryExecution execution = QueryExecution.model(model).query(query).timeout(timeout, TimeUnit.SECONDS).build()) {
+            ResultSet results = execution.execSelect();
+            long count = 0;
+            while (results.hasNext()) {
+                results.next();
+                count++;
+            }
+            return count;
+        }
+    }
+
+    // Authors with a paper, for the author placeholder of the queries
+    private static List<String> authors(Model model) {
+        List<String> authors = new ArrayList<>();
+        String query = "PREFIX fd: <" + TBox.NS + ">\nSELECT DISTINCT ?a WHERE { ?a fd:authors ?p } LIMIT 100";
+        try (QueryExecution execution = QueryExecution.model(model).query(query).build()) {
+            execution.execSelect().forEachRemaining(solution -> authors.add(solution.getResource("a").getURI()));
+        }
+        return authors;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,46 @@
+package sdm.knowledge;
+
+import org.apache.jena.ontology.OntModel;
+import org.apache.jena.ontology.OntModelSpec;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+
+// How much of the TBOX is applied to the data when a model is built or queried, from no inference at all to
+// Jena's full OWL rule reasoner. MATERIALIZED covers what most queries need (hierarchies, inverses, domains
+// and ranges) by adding the inferred triples once with the Materializer, so the model has no inference cost.
+public enum ReasoningProfile {
+    NONE(OntModelSpec.OWL_DL_MEM),
+    MATERIALIZED(OntModelSpec.OWL_DL_MEM),
+    TRANSITIVE(OntModelSpec.OWL_DL_MEM_TRANS_INF),
+    RDFS(OntModelSpec.OWL_DL_MEM_RDFS_INF),
+    MICRO(OntModelSpec.OWL_MEM_MICRO_RULE_INF),
+    MINI(OntModelSpec.OWL_MEM_MINI_RULE_INF),
+    FULL(OntModelSpec.OWL_DL_MEM_RULE_INF);
+
+    private final OntModelSpec spec;
+
+    ReasoningProfile(OntModelSpec spec) {
+        this.spec = spec;
+    }
+
+    public OntModelSpec getSpec() {
+        return spec;
+    }
+
+    // Accepts the names in any case and with "-" for "_", plus owl-micro, owl-mini and owl-full
+    public static ReasoningProfile of(String name) {
+        String normalized = name.toUpperCase().replace('-', '_');
+        if (normalized.startsWith("OWL_")) {
+            normalized = normalized.substring(4);
+        }
+        return valueOf(normalized);
+    }
+
+    // An OntModel reasoning over base. MATERIALIZED adds the inferred triples to base itself.
+    public OntModel over(Model base, int threads) {
+        if (this == MATERIALIZED) {
+            new Materializer(base.getGraph(), threads, 100000).materialize(base.getGraph());
+        }
+        return ModelFactory.createOntologyModel(spec, base);
+    }
+}
@@ -0,0 +1,307 @@
+package sdm.knowledge;
+
+import org.apache.jena.atlas.json.JSON;
+import org.apache.jena.atlas.json.JsonArray;
+import org.apache.jena.atlas.json.JsonNumber;
+import org.apache.jena.atlas.json.JsonObject;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Writes the triples it is given to several files at once, one writer thread per shard, so that serializing
+// and loading the output are not limited to one stream. A triple goes to the shard of its subject:
+//   - hash:  the hash of the subject modulo the number of shards, so the triples of a resource stay together;
+//   - class: the group of the TBOX class of the subject (papers, submissions, revisions, academics, venues,
+//            fields), and "other" for the TBOX itself and the rest. The types must be known up front, so this
+//            needs the whole graph.
+// Triples with a blank node always go to the first shard, as blank node labels are local to a file. The shards
+// of <path>.<ext> are <path>-<shard>.<ext>, and <path>.manifest.json lists them with their triples and bytes.
+// Triples are handed to the shard threads in batches through bounded queues.
+public class ShardedWriter implements StreamRDF {
+    public enum Partition {HASH, CLASS}
+
+    public static final String[] GROUPS = {"other", "papers", "submissions", "revisions", "academics", "venues", "fields"};
+
+    private static final int BATCH = 4096;
+    private static final int QUEUED_BATCHES = 8;
+    private static final Consumer<StreamRDF> END = writer -> {
+    };
+
+    private final String path;
+    private final OutputFormat format;
+    private final Partition partition;
+    private final Map<Node, Integer> subjectGroups;
+    private final Shard[] shards;
+    private final long start = System.nanoTime();
+
+    private class Shard implements Runnable {
+        final String name;
+        final String file;
+        final BlockingQueue<Consumer<StreamRDF>> queue = new ArrayBlockingQueue<>(QUEUED_BATCHES);
+        final Thread thread;
+        Triple[] batch = new Triple[BATCH];
+        int size;
+        long triples;
+        volatile IOException error;
+
+        Shard(String name) {
+            this.name = name;
+            this.file = shardPath(path, name);
+            this.thread = new Thread(this, "shard-" + name);
+        }
+
+        void add(Triple triple) {
+            batch[size++] = triple;
+            triples++;
+            if (size == BATCH) flush();
+        }
+
+        void flush() {
+            if (size == 0) return;
+            Triple[] triples = batch;
+            int count = size;
+            put(writer -> {
+                for (int i = 0; i < count; i++) writer.triple(triples[i]);
+            });
+            batch = new Triple[BATCH];
+            size = 0;
+        }
+
+        void put(Consumer<StreamRDF> item) {
+            try {
+                while (!queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                    if (error != null) throw new RuntimeException("Could not write " + file, error);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public void run() {
+            try (OutputStream output = format.open(file)) {
+                StreamRDF writer = format.stream(output);
+                writer.start();
+                Consumer<StreamRDF> item;
+                while ((item = queue.take()) != END) {
+                    item.accept(writer);
+                }
+                writer.finish();
+            } catch (IOException e) {
+                error = e;
+            } catch (RuntimeException e) {
+                error = new IOException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Writes graph to shards of path
+    public static void write(String path, OutputFormat format, Graph graph, int shards, Partition partition) throws IOException {
+        ShardedWriter writer = new ShardedWriter(path, format, shards, partition, partition == Partition.CLASS ? subjectGroups(graph) : null);
+        writer.start();
+        graph.getPrefixMapping().getNsPrefixMap().forEach(writer::prefix);
+        graph.find().forEachRemaining(writer::triple);
+        writer.finish();
+    }
+
+    // subjectGroups gives the index in GROUPS of every typed subject, and is only needed for Partition.CLASS
+    public ShardedWriter(String path, OutputFormat format, int shards, Partition partition, Map<Node, Integer> subjectGroups) {
+        if (partition == Partition.CLASS && subjectGroups == null) {
+            throw new IllegalArgumentException("Partitioning by class needs the types of the subjects");
+        }
+        this.path = path;
+        this.format = format;
+        this.partition = partition;
+        this.subjectGroups = subjectGroups;
+        int count = partition == Partition.CLASS ? GROUPS.length : Math.max(1, shards);
+        this.shards = new Shard[count];
+        for (int i = 0; i < count; i++) {
+            this.shards[i] = new Shard(partition == Partition.CLASS ? GROUPS[i] : String.format("%05d", i));
+        }
+    }
+
+    public static Partition partition(String name) {
+        switch (name) {
+            case "hash":
+                return Partition.HASH;
+            case "class":
+                return Partition.CLASS;
+            default:
+                throw new IllegalArgumentException("Unknown partition: " + name);
+        }
+    }
+
+    // <path>.<ext> becomes <path>-<shard>.<ext>, the extension being everything after the first dot of the file name
+    static String shardPath(String path, String shard) {
+        int name = path.lastIndexOf(File.separatorChar) + 1;
+        int dot = path.indexOf('.', name);
+        return dot < 0 ? path + "-" + shard : path.substring(0, dot) + "-" + shard + path.substring(dot);
+    }
+
+    static String manifestPath(String path) {
+        int name = path.lastIndexOf(File.separatorChar) + 1;
+        int dot = path.indexOf('.', name);
+        return (dot < 0 ? path : path.substring(0, dot)) + ".manifest.json";
+    }
+
+    @Override
+    public void start() {
+        for (Shard shard : shards) {
+            shard.thread.start();
+        }
+    }
+
+    @Override
+    public void triple(Triple triple) {
+        shards[shard(triple)].add(triple);
+    }
+
+    private int shard(Triple triple) {
+        Node subject = triple.getSubject();
+        if (subject.isBlank() || triple.getObject().isBlank()) return 0;
+        if (partition == Partition.HASH) {
+            return (subject.hashCode() & Integer.MAX_VALUE) % shards.length;
+        }
+        return subjectGroups.getOrDefault(subject, 0);
+    }
+
+    @Override
+    public void quad(Quad quad) {
+        triple(quad.asTriple());
+    }
+
+    @Override
+    public void base(String base) {
+    }
+
+    @Override
+    public void prefix(String prefix, String iri) {
+        for (Shard shard : shards) {
+            shard.flush();
+            shard.put(writer -> writer.prefix(prefix, iri));
+        }
+    }
+
+    // Waits for every shard to be written, then writes the manifest
+    @Override
+    public void finish() {
+        for (Shard shard : shards) {
+            shard.flush();
+            shard.put(END);
+        }
+        for (Shard shard : shards) {
+            try {
+                shard.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+        try {
+            checkErrors();
+            writeManifest();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        System.out.printf("Wrote %d triples to %d shards in %.1fs%n", triples(), shards.length, (System.nanoTime() - start) / 1e9);
+    }
+
+    public long triples() {
+        long triples = 0;
+        for (Shard shard : shards) {
+            triples += shard.triples;
+        }
+        return triples;
+    }
+
+    private void checkErrors() throws IOException {
+        for (Shard shard : shards) {
+            if (shard.error != null) throw shard.error;
+        }
+    }
+
+    private void writeManifest() throws IOException {
+        JsonObject manifest = new JsonObject();
+        manifest.put("format", format.getFormat().toString());
+        manifest.put("partition", partition.name().toLowerCase());
+        manifest.put("triples", triples());
+        manifest.put("seconds", JsonNumber.value((System.nanoTime() - start) / 1e9));
+        JsonArray shardArray = new JsonArray();
+        for (Shard shard : shards) {
+            JsonObject s = new JsonObject();
+            s.put("name", shard.name);
+            s.put("file", new File(shard.file).getName());
+            s.put("triples", shard.triples);
+            s.put("bytes", new File(shard.file).length());
+            shardArray.add(s);
+        }
+        manifest.put("shards", shardArray);
+        try (OutputStream out = new FileOutputStream(manifestPath(path))) {
+            JSON.write(out, manifest);
+        }
+    }
+
+    // ---------------------
+    // -------Classes-------
+    // ---------------------
+
+    // The group of every subject of graph with a type below one of the group classes of the TBOX in graph
+    static Map<Node, Integer> subjectGroups(Graph graph) {
+        Map<Node, Integer> roots = new HashMap<>();
+        roots.put(uri(TBox.Classes.paper), 1);
+        roots.put(uri(TBox.Classes.submission), 2);
+        roots.put(uri(TBox.Classes.revision), 3);
+        roots.put(uri(TBox.Classes.academic), 4);
+        roots.put(uri(TBox.Classes.venue), 5);
+        roots.put(uri(TBox.Classes.venuePublication), 5);
+        roots.put(uri(TBox.Classes.field), 6);
+
+        Map<Node, List<Node>> superClasses = new HashMap<>();
+        graph.find(Node.ANY, RDFS.subClassOf.asNode(), Node.ANY).forEachRemaining(t -> {
+            if (t.getObject().isURI()) superClasses.computeIfAbsent(t.getSubject(), c -> new ArrayList<>()).add(t.getObject());
+        });
+        Map<Node, Integer> classGroups = new HashMap<>();
+        Map<Node, Integer> subjects = new HashMap<>();
+        graph.find(Node.ANY, RDF.type.asNode(), Node.ANY).forEachRemaining(t -> {
+            if (!t.getSubject().isURI() || subjects.containsKey(t.getSubject())) return;
+            int group = classGroups.computeIfAbsent(t.getObject(), c -> group(c, roots, superClasses));
+            if (group > 0) subjects.put(t.getSubject(), group);
+        });
+        return subjects;
+    }
+
+    private static int group(Node c, Map<Node, Integer> roots, Map<Node, List<Node>> superClasses) {
+        Set<Node> seen = new HashSet<>();
+        Deque<Node> pending = new ArrayDeque<>(List.of(c));
+        while (!pending.isEmpty()) {
+            Node next = pending.poll();
+            if (!seen.add(next)) continue;
+            Integer group = roots.get(next);
+            if (group != null) return group;
+            pending.addAll(superClasses.getOrDefault(next, Collections.emptyList()));
+        }
+        return 0;
+    }
+
+    private static Node uri(String iri) {
+        return NodeFactory.createURI(iri);
+    }
+}
@@ -0,0 +1,265 @@
+package sdm.knowledge;
+
+import org.apache.jena.atlas.json.JSON;
+import org.apache.jena.atlas.json.JsonNumber;
+import org.apache.jena.atlas.json.JsonObject;
+import org.apache.jena.fuseki.main.FusekiServer;
+import org.apache.jena.query.ARQ;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.system.Txn;
+import org.apache.jena.tdb2.DatabaseMgr;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Serves the TBOX and ABOX over SPARQL from one embedded Fuseki, so clients share a warm dataset instead of
+// parsing abox.ttl themselves. The dataset is an in-memory one loaded from RDF files or a TDB2 database, and
+// only the query and read endpoints are exposed. Jetty runs requests on a bounded thread pool, queries are
+// cancelled after a timeout and results are written to the client as they are produced. The latency of every
+// request is recorded into a fixed histogram served as JSON at /$/latency. With --cache the results of SELECT
+// queries are kept in a QueryCache, whose statistics are served with the latencies.
+public class SparqlServer {
+    private final FusekiServer server;
+    private final Latency latency = new Latency();
+    private QueryCache cache;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Invalid arguments");
+            System.out.println("Usage: java SparqlServer (--memory=<files> | --tdb2=<dir>) [options]");
+            System.out.println("\t --memory=<files>:   comma separated RDF files (TBOX, ABOX) loaded into an in-memory dataset.");
+            System.out.println("\t --tdb2=<dir>:       TDB2 database directory, e.g. one loaded with ABox --tdb2.");
+            System.out.println("\t --port=<port>:      HTTP port (default 3030).");
+            System.out.println("\t --name=<name>:      dataset name: queries go to http://localhost:<port>/<name>/sparql (default kg).");
+            System.out.println("\t --threads=<n>:      largest number of Jetty threads serving requests (default 32). The acceptor and");
+            System.out.println("\t                     selector threads of Jetty come on top.");
+            System.out.println("\t --timeout=<ms>:     cancel queries that run for longer than <ms> milliseconds (default 30000, 0 for none).");
+            System.out.println("\t --text-index=<dir>: answer text:query from the Lucene index in <dir>, see TextIndex.");
+            System.out.println("\t --cache=<entries>:  cache the results of SELECT queries, up to <entries> results, see QueryCache.");
+            System.out.println("\t --cache-rows=<n>:   largest result kept in the cache, in rows (default 10000).");
+            System.out.println("\t --cache-policy=<p>: eviction policy of the cache, lru or lfu (default lru).");
+            System.out.println("\t --loopback:         only accept connections from localhost.");
+            System.out.println("\t --progress=<s>:     print the request latencies every <s> seconds.");
+            System.out.println("\t --report=<path>:    write the request latencies as JSON to <path> when the server stops.");
+            return;
+        }
+        Options options = new Options(args, 0);
+        DatasetGraph dataset = open(options);
+        if (options.has("text-index")) {
+            new TextIndex(options.get("text-index", null)).attach(dataset);
+        }
+        SparqlServer server = new SparqlServer(dataset, options.get("name", "kg"), options.getInt("port", 3030),
+                options.getInt("threads", 32), options.getInt("timeout", 30000), options.has("loopback"));
+        server.cache = QueryRunner.cache(DatasetFactory.wrap(dataset), options);
+
+        String reportPath = options.get("report", null);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            if (server.cache != null) {
+                System.out.println(server.cache.stats());
+            }
+            if (reportPath != null) {
+                try (OutputStream out = new FileOutputStream(reportPath)) {
+                    JSON.write(out, server.latency());
+                } catch (IOException e) {
+                    System.err.println("Could not write " + reportPath + ": " + e.getMessage());
+                }
+            }
+        }));
+        if (options.has("progress")) {
+            ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "latency-progress");
+                thread.setDaemon(true);
+                return thread;
+            });
+            int seconds = options.getInt("progress", 10);
+            progress.scheduleAtFixedRate(() -> System.out.println(server.latency), seconds, seconds, TimeUnit.SECONDS);
+        }
+        server.start();
+        System.out.printf("Serving %s on http://localhost:%d/%s/sparql%n",
+                options.has("tdb2") ? options.get("tdb2", null) : options.get("memory", null), server.getPort(), options.get("name", "kg"));
+        server.join();
+    }
+
+    public SparqlServer(DatasetGraph dataset, String name, int port, int threads, long timeoutMillis, boolean loopback) {
+        if (timeoutMillis > 0) {
+            dataset.getContext().set(ARQ.queryTimeout, timeoutMillis);
+        }
+        server = FusekiServer.create()
+                .port(port)
+                .loopback(loopback)
+                .numServerThreads(Math.min(threads, 8), threads)
+                .add(name, dataset, false)
+                .enablePing(true)
+                .addServlet("/$/latency", new LatencyServlet(this))
+                .build();
+        // Around the whole Jetty handler rather than as a servlet filter, which would come after the one of Fuseki
+        // that dispatches the dataset requests
+        Server jetty = server.getJettyServer();
+        latency.setHandler(jetty.getHandler());
+        jetty.setHandler(latency);
+
+        // The acceptors and selectors of the connector run on the same pool and never serve requests. Reserved
+        // threads would be leased from the requests too, which leaves none with small pools.
+        int jettyThreads = 0;
+        for (Connector connector : jetty.getConnectors()) {
+            if (connector instanceof ServerConnector) {
+                jettyThreads += ((ServerConnector) connector).getAcceptors()
+                        + ((ServerConnector) connector).getSelectorManager().getSelectorCount();
+            }
+        }
+        QueuedThreadPool pool = (QueuedThreadPool) jetty.getThreadPool();
+        pool.setReservedThreads(0);
+        pool.setMaxThreads(threads + jettyThreads);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop();
+    }
+
+    public void join() {
+        server.join();
+    }
+
+    public int getPort() {
+        return server.getPort();
+    }
+
+    public JsonObject latency() {
+        JsonObject json = latency.toJson();
+        if (cache != null) {
+            json.put("cache", cache.toJson());
+        }
+        return json;
+    }
+
+    // The dataset of --memory or --tdb2
+    static DatasetGraph open(Options options) {
+        if (options.has("memory")) {
+            DatasetGraph dataset = DatasetGraphFactory.createTxnMem();
+            long start = System.nanoTime();
+            Txn.executeWrite(dataset, () -> {
+                for (String file : options.get("memory", "").split(",")) {
+                    RDFDataMgr.read(dataset.getDefaultGraph(), file);
+                }
+            });
+            System.out.printf("Loaded %d triples in %.1fs%n", Txn.calculateRead(dataset, () -> dataset.getDefaultGraph().size()),
+                    (System.nanoTime() - start) / 1e9);
+            return dataset;
+        }
+        if (options.has("tdb2")) {
+            return DatabaseMgr.connectDatasetGraph(options.get("tdb2", null));
+        }
+        throw new IllegalArgumentException("One of --memory or --tdb2 is needed");
+    }
+
+    // ---------------------
+    // -------Latency-------
+    // ---------------------
+
+    // Counts requests into buckets of powers of two microseconds, so recording takes no lock and no memory and
+    // percentiles are the upper bound of their bucket, at most twice the real value
+    static class Latency extends HandlerWrapper {
+        private static final int BUCKETS = 40;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder totalMicros = new LongAdder();
+        private final LongAdder active = new LongAdder();
+
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+                throws IOException, ServletException {
+            long start = System.nanoTime();
+            active.increment();
+            try {
+                super.handle(target, baseRequest, request, response);
+            } finally {
+                active.decrement();
+                long micros = (System.nanoTime() - start) / 1000;
+                buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros)));
+                totalMicros.add(micros);
+                requests.increment();
+                if (response.getStatus() >= 400) {
+                    errors.increment();
+                }
+            }
+        }
+
+        // In milliseconds
+        double percentile(double p) {
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+            long rank = (long) Math.ceil(p / 100 * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0) return (1L << i) / 1000.0;
+            }
+            return 0;
+        }
+
+        JsonObject toJson() {
+            JsonObject json = new JsonObject();
+            long count = requests.sum();
+            json.put("requests", count);
+            json.put("errors", errors.sum());
+            json.put("active", active.sum());
+            json.put("mean_ms", JsonNumber.value(count == 0 ? 0 : totalMicros.sum() / 1000.0 / count));
+            json.put("p50_ms", JsonNumber.value(percentile(50)));
+            json.put("p95_ms", JsonNumber.value(percentile(95)));
+            json.put("p99_ms", JsonNumber.value(percentile(99)));
+            return json;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%,d requests (%d errors, %d active), p50 %.1f ms, p95 %.1f ms, p99 %.1f ms",
+                    requests.sum(), errors.sum(), active.sum(), percentile(50), percentile(95), percentile(99));
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static class LatencyServlet extends HttpServlet {
+        private final SparqlServer server;
+
+        LatencyServlet(SparqlServer server) {
+            this.server = server;
+        }
+
+        @Override
+        protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+            response.setContentType("application/json");
+            response.setCharacterEncoding("UTF-8");
+            JSON.write(response.getOutputStream(), server.latency());
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package sdm.knowledge;
+
+import com.opencsv.CSVReader;
+import com.opencsv.exceptions.CsvValidationException;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Reads the normalized tables of starting_data and joins them into the rows of data.csv, reviews.csv and
+// reviewers.csv, so the ABox can be built from them without writing the denormalized csvs first. The small
+// side of every join (authors, areas, reviewer groups) is loaded into a hash table; the tables are loaded on
+// a thread pool at the same time, then chunks of papers.csv are probed against them on the same pool.
+//
+//   papers.csv join paper_author.csv join authors.csv        -> Authors, Author(s) ID
+//   papers.csv join papers_areas.csv join areas.csv          -> Index Keywords
+//   reviewers_reviews_articles.csv join auth_is_reviewer.csv -> reviews and reviewers of every paper
+//
+// The extract has no citations, so there are no citation rows, and no review decisions or texts, so every
+// review accepts the paper.
+public class StartingData implements ABoxSource {
+    private static final Pattern DOI = Pattern.compile("https?://(?:dx\\.)?doi\\.org/([^|]+)");
+    private static final String NA = "NA";
+
+    private final String folder;
+    private final int threads;
+    private final List<Map<String, String>> papers = new ArrayList<>();
+    private final List<Map<String, String>> reviews = new ArrayList<>();
+    private final List<Map<String, String>> reviewers = new ArrayList<>();
+    private int skippedPapers = 0;
+
+    public StartingData(String folder, int threads) throws IOException, CsvValidationException {
+        this.folder = folder.endsWith("/") ? folder : folder + "/";
+        this.threads = threads;
+        join();
+    }
+
+    @Override
+    public Rows papers() {
+        return ABoxSource.of(papers);
+    }
+
+    @Override
+    public Rows citations() {
+        return ABoxSource.of(Collections.emptyList());
+    }
+
+    @Override
+    public Rows reviews() {
+        return ABoxSource.of(reviews);
+    }
+
+    @Override
+    public Rows reviewers() {
+        return ABoxSource.of(reviewers);
+    }
+
+    // ---------------------
+    // --------Joins--------
+    // ---------------------
+
+    private void join() throws IOException, CsvValidationException {
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            Future<Map<String, String>> authorNames = executor.submit(() -> index("authors.csv", ":ID", "author:string"));
+            Future<Map<String, List<String>>> paperAuthors = executor.submit(this::paperAuthors);
+            Future<Map<String, List<String>>> areaKeywords = executor.submit(this::areaKeywords);
+            Future<Map<String, List<String>>> paperAreas = executor.submit(() -> group("papers_areas.csv", ":START_ID", ":END_ID"));
+            Future<Map<String, List<String>>> groupAuthors = executor.submit(() -> group("auth_is_reviewer.csv", ":END_ID", ":START_ID"));
+            Future<List<String[]>> reviewedArticles = executor.submit(() -> rows("reviewers_reviews_articles.csv", ":START_ID", ":END_ID"));
+
+            String[] columns = {"article:ID", "title:string[]", "year:int", "journal:string", "booktitle:string",
+                    "volume:string", "ee:string[]", "key:string", "abstract:string[]"};
+            List<String[]> articles = rows("papers.csv", columns);
+
+            Tables tables = new Tables(get(authorNames), get(paperAuthors), get(areaKeywords), get(paperAreas));
+            List<Future<List<Map<String, String>>>> chunks = new ArrayList<>();
+            int chunkSize = Math.max(1, articles.size() / (threads * 4));
+            for (int from = 0; from < articles.size(); from += chunkSize) {
+                List<String[]> chunk = articles.subList(from, Math.min(articles.size(), from + chunkSize));
+                chunks.add(executor.submit(() -> {
+                    List<Map<String, String>> rows = new ArrayList<>(chunk.size());
+                    for (String[] article : chunk) {
+                        rows.add(tables.paper(article));
+                    }
+                    return rows;
+                }));
+            }
+
+            // Papers keep the order of papers.csv
+            Map<String, String> articleDois = new HashMap<>();
+            Set<String> authors = new HashSet<>();
+            for (int i = 0; i < chunks.size(); i++) {
+                List<Map<String, String>> rows = get(chunks.get(i));
+                for (int j = 0; j < rows.size(); j++) {
+                    Map<String, String> row = rows.get(j);
+                    if (row == null) {
+                        skippedPapers++;
+                        continue;
+                    }
+                    papers.add(row);
+                    articleDois.put(articles.get(i * chunkSize + j)[0], row.get("DOI"));
+                    authors.addAll(Arrays.asList(row.get("Author(s) ID").split(";")));
+                }
+            }
+
+            addReviews(get(reviewedArticles), get(groupAuthors), articleDois, authors);
+        } finally {
+            executor.shutdown();
+        }
+        System.out.printf("Joined %d papers (%d skipped) and %d reviews in %.1fs%n",
+                papers.size(), skippedPapers, reviews.size(), (System.nanoTime() - start) / 1e9);
+    }
+
+    private static class Tables {
+        final Map<String, String> authorNames;
+        final Map<String, List<String>> paperAuthors;
+        final Map<String, List<String>> areaKeywords;
+        final Map<String, List<String>> paperAreas;
+
+        Tables(Map<String, String> authorNames, Map<String, List<String>> paperAuthors,
+               Map<String, List<String>> areaKeywords, Map<String, List<String>> paperAreas) {
+            this.authorNames = authorNames;
+            this.paperAuthors = paperAuthors;
+            this.areaKeywords = areaKeywords;
+            this.paperAreas = paperAreas;
+        }
+
+        // A data.csv row, or null for papers without authors, keywords or venue
+        Map<String, String> paper(String[] article) {
+            String id = article[0];
+            List<String> authorIds = new ArrayList<>();
+            List<String> names = new ArrayList<>();
+            for (String author : paperAuthors.getOrDefault(id, Collections.emptyList())) {
+                String name = authorNames.get(author);
+                if (name == null) continue;
+                authorIds.add(author);
+                // Names are split on ", " by the ABox
+                names.add(name.replace(", ", " "));
+            }
+            Set<String> keywords = new LinkedHashSet<>();
+            for (String area : paperAreas.getOrDefault(id, Collections.emptyList())) {
+                keywords.addAll(areaKeywords.getOrDefault(area, Collections.emptyList()));
+            }
+            boolean journal = !article[3].equals(NA);
+            String venue = journal ? article[3] : article[4];
+            if (authorIds.isEmpty() || keywords.isEmpty() || venue.equals(NA)) {
+                return null;
+            }
+
+            Map<String, String> row = new HashMap<>();
+            row.put("Authors", String.join(", ", names));
+            row.put("Author(s) ID", String.join(";", authorIds));
+            row.put("Title", text(article[1]));
+            row.put("Year", article[2]);
+            row.put("Source title", venue);
+            row.put("Volume", volume(article[5]));
+            row.put("DOI", doi(article[6], article[7], id));
+            row.put("Abstract", text(article[8]));
+            row.put("Index Keywords", String.join("; ", keywords));
+            row.put("Document Type", journal ? "Article" : "Conference Paper");
+            return row;
+        }
+    }
+
+    // One review and one reviewers row per reviewed paper, by the authors of its reviewer group that are authors
+    // of some paper themselves
+    private void addReviews(List<String[]> reviewedArticles, Map<String, List<String>> groupAuthors,
+                            Map<String, String> articleDois, Set<String> authors) {
+        for (String[] reviewed : reviewedArticles) {
+            String doi = articleDois.get(reviewed[1]);
+            if (doi == null) continue;
+            List<String> group = new ArrayList<>();
+            for (String author : groupAuthors.getOrDefault(reviewed[0], Collections.emptyList())) {
+                if (authors.contains(author)) group.add(author);
+            }
+            if (group.isEmpty()) continue;
+            for (String author : group) {
+                Map<String, String> review = new HashMap<>();
+                review.put("Paper", doi);
+                review.put("Reviewer", author);
+                review.put("Decision", "True");
+                review.put("Review", "");
+                reviews.add(review);
+            }
+            Map<String, String> row = new HashMap<>();
+            row.put("Paper", doi);
+            row.put("Reviewers", String.join(";", group));
+            reviewers.add(row);
+        }
+    }
+
+    // Authors of every paper, the main author first
+    private Map<String, List<String>> paperAuthors() throws IOException, CsvValidationException {
+        Map<String, List<String>> authors = new HashMap<>();
+        for (String[] row : rows("paper_author.csv", ":START_ID", ":END_ID", "MAIN_AUTH:bool")) {
+            List<String> paper = authors.computeIfAbsent(row[0], p -> new ArrayList<>());
+            if (row[2].equals("1")) {
+                paper.add(0, row[1]);
+            } else {
+                paper.add(row[1]);
+            }
+        }
+        return authors;
+    }
+
+    // areas.csv has no id column: areas are numbered from 1 in file order, leaving out the empty lines
+    private Map<String, List<String>> areaKeywords() throws IOException, CsvValidationException {
+        Map<String, List<String>> keywords = new HashMap<>();
+        int id = 0;
+        for (String[] row : rows("areas.csv", "Areas")) {
+            if (row[0].isBlank()) continue;
+            List<String> area = new ArrayList<>();
+            for (String keyword : row[0].split(" 00 ")) {
+                if (!keyword.isBlank()) area.add(keyword.trim().replace(";", ","));
+            }
+            keywords.put(String.valueOf(++id), area);
+        }
+        return keywords;
+    }
+
+    private Map<String, String> index(String file, String key, String value) throws IOException, CsvValidationException {
+        Map<String, String> index = new HashMap<>();
+        for (String[] row : rows(file, key, value)) {
+            index.put(row[0], row[1]);
+        }
+        return index;
+    }
+
+    private Map<String, List<String>> group(String file, String key, String value) throws IOException, CsvValidationException {
+        Map<String, List<String>> groups = new HashMap<>();
+        for (String[] row : rows(file, key, value)) {
+            groups.computeIfAbsent(row[0], k -> new ArrayList<>()).add(row[1]);
+        }
+        return groups;
+    }
+
+    // The given columns of every row, in that order. Empty lines are read as a row of empty values.
+    private List<String[]> rows(String file, String... columns) throws IOException, CsvValidationException {
+        List<String[]> rows = new ArrayList<>();
+        try (CSVReader reader = new CSVReader(new FileReader(folder + file))) {
+            List<String> header = Arrays.asList(reader.readNext());
+            int[] indexes = new int[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                indexes[i] = header.indexOf(columns[i]);
+                if (indexes[i] < 0) {
+                    throw new IllegalArgumentException("No column " + columns[i] + " in " + folder + file);
+                }
+            }
+            String[] line;
+            while ((line = reader.readNext()) != null) {
+                String[] row = new String[columns.length];
+                for (int i = 0; i < columns.length; i++) {
+                    row[i] = indexes[i] < line.length ? line[indexes[i]] : "";
+                }
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    private static <T> T get(Future<T> future) throws IOException, CsvValidationException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            if (e.getCause() instanceof CsvValidationException) throw (CsvValidationException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    // ---------------------
+    // -------Columns-------
+    // ---------------------
+
+    // Array columns are separated by "|"
+    private static String text(String value) {
+        return value.equals(NA) ? "" : value.replace('|', ' ');
+    }
+
+    // The DOI of the first doi.org link, or the dblp key for papers without one
+    private static String doi(String ee, String key, String id) {
+        Matcher matcher = DOI.matcher(ee);
+        if (matcher.find()) return matcher.group(1);
+        return key.equals(NA) ? id : key;
+    }
+
+    // Volumes are written as unsigned ints: "91-B" becomes 91 and missing volumes 0
+    private static String volume(String value) {
+        int end = 0;
+        while (end < value.length() && Character.isDigit(value.charAt(end))) end++;
+        return end == 0 ? "0" : value.substring(0, end);
+    }
+}
@@ -0,0 +1,374 @@
+package sdm.knowledge;
+
+import com.opencsv.exceptions.CsvValidationException;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.system.StreamRDF;
+
+import java.io.IOException;
+import java.util.*;
+
+public class StreamingABox {
+    private final StreamRDF out;
+    private final ABoxState state;
+    private final Vocabulary v;
+    private CitationJoin citationJoin;
+    private PipelineMetrics metrics = new PipelineMetrics();
+    private final CsvReader.Splitter authors = new CsvReader.Splitter(", ");
+    private final CsvReader.Splitter authorIds = new CsvReader.Splitter(";");
+    private final CsvReader.Splitter keywords = new CsvReader.Splitter("; ");
+    private final CsvReader.Splitter reviewers = new CsvReader.Splitter(";");
+
+    public StreamingABox(StreamRDF out) {
+        this(out, new ABoxState(), new Vocabulary());
+    }
+
+    public StreamingABox(StreamRDF out, ABoxState state, Vocabulary vocabulary) {
+        this.out = out;
+        this.state = state;
+        this.v = vocabulary;
+    }
+
+    public ABoxState getState() {
+        return state;
+    }
+
+    // Links the citations through an external sort-merge join instead of the DOIs held in the state
+    public void setCitationJoin(CitationJoin citationJoin) {
+        this.citationJoin = citationJoin;
+    }
+
+    // Emitted triples are counted in the current stage of the metrics
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void populate(String dataPath) throws IOException, CsvValidationException {
+        populate(ABoxSource.csv(dataPath));
+    }
+
+    public void populate(ABoxSource source) throws IOException, CsvValidationException {
+
+        metrics.start("papers");
+        ABoxSource.Rows rows = source.papers();
+        Map<String, String> values;
+        long row = 0;
+        while ((values = rows.next()) != null) {
+            metrics.row();
+            addPaperRow(values, row++);
+            if (citationJoin != null) {
+                citationJoin.addPaper(values.get("DOI"), state.paper(values.get("DOI")));
+            }
+        }
+
+        metrics.start("citations");
+        rows = source.citations();
+        while ((values = rows.next()) != null) {
+            metrics.row();
+            if (citationJoin != null) {
+                citationJoin.addCitation(values.get("Paper"), values.get("Citation"));
+                state.citationRows.incrementAndGet();
+            } else {
+                addCitationRow(values);
+            }
+        }
+        reportCitations(state, citationJoin, metrics);
+
+        metrics.start("revisions");
+        rows = source.reviews();
+        while ((values = rows.next()) != null) {
+            metrics.row();
+            addReviewRow(values);
+        }
+
+        metrics.start("reviewers");
+        rows = source.reviewers();
+        while ((values = rows.next()) != null) {
+            metrics.row();
+            addReviewersRow(values);
+        }
+        reportReviewers(state, metrics);
+        metrics.end(0);
+        metrics.entities(state.counters);
+        v.nodes.report(metrics);
+
+    }
+
+    // Numbers the venue and keywords of the row if they are new, and records the first row of its venue
+    // publication. ParallelABox calls it on the reading thread before the row goes to a worker, so the names and
+    // the values taken from the first row of an entity are the ones of a build in input order.
+    void registerPaperRow(Map<String, String> values, long row) {
+        boolean conference = values.get("Document Type").equals("Conference Paper");
+        String venue = values.get("Source title");
+        state.registerVenue(venue, conference);
+        state.registerVenuePublication(venuePublicationName(state.venueName(venue), values, conference), row);
+        keywords.reset(values.get("Index Keywords"));
+        while (keywords.next()) {
+            state.registerKeyword(keywords.toString());
+        }
+    }
+
+    void addPaperRow(Map<String, String> values, long row) {
+        registerPaperRow(values, row);
+        boolean conference = values.get("Document Type").equals("Conference Paper");
+
+        // Paper
+        Node paper = createPaper(values, conference, row);
+
+        // Authors
+        addPaperAuthors(values, paper);
+
+        // Venue
+        ABoxState.Venue venue = createVenue(values);
+        Node venueNode = uri(venue.iri);
+
+        // Venue Publication
+        Node venuePublication = createVenuePublication(venueNode, values, conference, row);
+
+        // Submission
+        createSubmission(paper, venueNode, venuePublication, values.get("Year"), row);
+
+        // Fields
+        createFields(values, paper, venueNode);
+
+        state.addPaper(values.get("DOI"), row, venue, values.get("Year"));
+    }
+
+    void addCitationRow(Map<String, String> values) {
+        createCitation(values.get("Paper"), values.get("Citation"));
+        state.citationRows.incrementAndGet();
+    }
+
+    // Reviews of papers that are not known yet are left to a later run, which reads every review again
+    void addReviewRow(Map<String, String> values) {
+        String paper = values.get("Paper");
+        if (values.get("Decision").equals("False") || !state.hasPaper(paper) || state.hasRevision(paper)) return;
+        createRevision(values);
+    }
+
+    void addReviewersRow(Map<String, String> values) {
+        reviewers.reset(values.get("Reviewers"));
+        List<String> pending = null;
+        String paper = values.get("Paper");
+        String revision = state.revision(paper);
+        while (reviewers.next()) {
+            String id = reviewers.toString();
+            if (!addReviewer(revision, id)) {
+                if (pending == null) pending = new ArrayList<>();
+                pending.add(id);
+            }
+        }
+        reviewed(paper, pending);
+    }
+
+    // Links the pending reviewers of the state that can be now, e.g. those that became authors in this run
+    void retryReviewers() {
+        state.takePendingReviewers().forEach((paper, ids) -> {
+            String revision = state.revision(paper);
+            List<String> pending = null;
+            for (String id : ids) {
+                if (!addReviewer(revision, id)) {
+                    if (pending == null) pending = new ArrayList<>();
+                    pending.add(id);
+                }
+            }
+            reviewed(paper, pending);
+        });
+    }
+
+    // False if the paper has no revision or the reviewer is not an author yet
+    private boolean addReviewer(String revision, String id) {
+        if (revision == null || !state.hasAuthor(id)) return false;
+        emit(uri(revision), v.doneBy, v.nodes.uri("A", id));
+        return true;
+    }
+
+    // A paper is only reviewed once all its reviewers are linked, the others are kept in the state
+    private void reviewed(String paper, List<String> pending) {
+        if (pending == null) {
+            state.markReviewed(paper);
+        } else {
+            state.unresolvedReviewers.addAndGet(pending.size());
+            state.addPendingReviewers(paper, pending);
+        }
+    }
+
+    private void createRevision(Map<String, String> values) {
+        String paper = values.get("Paper");
+        Node revision = uri(state.addRevision(paper));
+        emit(revision, v.type, v.revision);
+        emit(revision, v.accepted, v.acceptedTrue);
+        emit(revision, v.reviewText, v.nodes.literal(values.get("Review"), XSDDatatype.XSDstring));
+
+        emit(revision, v.reviews, uri(state.submission(paper)));
+
+        String year = state.submissionYear(paper);
+        emit(revision, v.revisionDateStart, v.nodes.literal(year + "-01-10", XSDDatatype.XSDdate));
+        emit(revision, v.revisionDateEnd, v.nodes.literal(year + "-04-01", XSDDatatype.XSDdate));
+
+        ABoxState.Venue venue = state.submissionVenue(paper);
+        String handler = venue.handlers.get(state.choose("handler " + paper, 3));
+        emit(uri(handler), v.assigns, revision);
+    }
+
+    // Links the pending citations of the state whose papers are both known now, and returns how many
+    long retryCitations() {
+        long linked = 0;
+        for (String[] citation : state.takePendingCitations()) {
+            if (createCitation(citation[0], citation[1])) linked++;
+        }
+        return linked;
+    }
+
+    // Citations with a paper that is not known are kept in the state for a later run
+    private boolean createCitation(String paper, String citation) {
+        String citer = state.paper(paper);
+        String cited = state.paper(citation);
+        if (citer == null || cited == null) {
+            state.unresolvedCitations.incrementAndGet();
+            state.addPendingCitation(paper, citation);
+            return false;
+        }
+        emit(uri(citer), v.cites, uri(cited));
+        return true;
+    }
+
+    static void reportCitations(ABoxState state, CitationJoin citationJoin, PipelineMetrics metrics) throws IOException {
+        if (citationJoin != null) {
+            citationJoin.join();
+            metrics.triples(citationJoin.getLinked());
+            System.out.println(citationJoin.report());
+        } else if (state.unresolvedCitations.get() > 0) {
+            System.out.printf("%d citations with a DOI that is not in data.csv were skipped%n", state.unresolvedCitations.get());
+        }
+        metrics.set("unresolved_citations", state.unresolvedCitations.get() + (citationJoin == null ? 0 : citationJoin.getUnresolved()));
+    }
+
+    static void reportReviewers(ABoxState state, PipelineMetrics metrics) {
+        if (state.unresolvedReviewers.get() > 0) {
+            System.out.printf("%d reviewers that are not an author in data.csv were skipped%n", state.unresolvedReviewers.get());
+        }
+        metrics.set("unresolved_reviewers", state.unresolvedReviewers.get());
+    }
+
+    private void createFields(Map<String, String> values, Node paper, Node venue) {
+        keywords.reset(values.get("Index Keywords"));
+        while (keywords.next()) {
+            String keyword = keywords.toString();
+            String fieldName = state.field(keyword, f -> {
+                Node field = uri(f);
+                emit(field, v.type, v.field);
+                emit(field, v.keyword, NodeFactory.createLiteral(keyword, XSDDatatype.XSDstring));
+            });
+            Node field = uri(fieldName);
+            if (state.venueFields.add(venue.getURI() + " " + fieldName)) {
+                emit(venue, v.venueRelatedTo, field);
+            }
+            emit(paper, v.paperRelatedTo, field);
+        }
+    }
+
+    private void createSubmission(Node paper, Node venueNode, Node venuePublication, String year, long row) {
+        String submissionName = state.rowName("Sub", row);
+        Node submission = uri(submissionName);
+        emit(submission, v.type, v.submission);
+        emit(paper, v.submittedAs, submission);
+        emit(submission, v.submittedTo, venueNode);
+        emit(submission, v.publishedIn, venuePublication);
+        emit(submission, v.submissionDate, v.nodes.literal(year + "-01-01", XSDDatatype.XSDdate));
+        emit(submission, v.submissionAcceptedDate, v.nodes.literal(year + "-04-02", XSDDatatype.XSDdate));
+    }
+
+    private static String venuePublicationName(String venue, Map<String, String> values, boolean conference) {
+        return venue + "-" + values.get(conference ? "Year" : "Volume");
+    }
+
+    private Node createVenuePublication(Node venue, Map<String, String> values, boolean conference, long row) {
+        String venuePublicationName = venuePublicationName(venue.getURI(), values, conference);
+        Node venuePublication = uri(venuePublicationName);
+        if (!state.addVenuePublication(venuePublicationName, row)) {
+            return venuePublication;
+        }
+
+        emit(venuePublication, v.type, conference ? v.proceedings : v.volume);
+        emit(venuePublication, v.year, v.nodes.literal(values.get("Year"), XSDDatatype.XSDgYear));
+        emit(venuePublication, v.belongsTo, venue);
+        if (conference) {
+            Node location = v.barcelona;
+            if (state.locationCreated.compareAndSet(false, true)) {
+                emit(location, v.type, v.location);
+            }
+            emit(venuePublication, v.takesPlaceIn, location);
+        } else {
+            emit(venuePublication, v.volumeNumber, v.nodes.literal(values.get("Volume"), XSDDatatype.XSDunsignedInt));
+        }
+
+        return venuePublication;
+    }
+
+    private ABoxState.Venue createVenue(Map<String, String> values) {
+        return state.venues.computeIfAbsent(values.get("Source title"), vName -> {
+            boolean conference = state.isConference(vName);
+            Node venueClass = conference ? v.conferenceSubclasses[state.choose("venue " + vName, 4)] : v.journal;
+            Node handlerClass = conference ? v.chair : v.editor;
+
+            String venueName = state.venueName(vName);
+            Node venue = uri(venueName);
+            emit(venue, v.type, venueClass);
+            emit(venue, v.venueName, NodeFactory.createLiteral(vName, XSDDatatype.XSDstring));
+
+            List<String> handlers = new ArrayList<>(3);
+            for (int i = 0; i < 3; i++) {
+                String handlerName = state.handlerName(vName, i);
+                Node handler = uri(handlerName);
+                emit(handler, v.type, handlerClass);
+                emit(venue, v.managedBy, handler);
+                handlers.add(handlerName);
+            }
+            return state.createVenue(venueName, handlers);
+        });
+    }
+
+    private void addPaperAuthors(Map<String, String> values, Node paper) {
+        authors.reset(values.get("Authors"));
+        authorIds.reset(values.get("Author(s) ID"));
+        while (authors.next() && authorIds.next()) {
+            createAuthorPaper(authorIds.toString(), authors.toString(), paper);
+        }
+    }
+
+    private Node createPaper(Map<String, String> values, boolean conference, long row) {
+        Node paper = uri(state.rowName("P", row));
+        emit(paper, v.type, v.paperSubclasses[state.choose("paper " + values.get("DOI"), conference ? 4 : 3)]);
+        emit(paper, v.doi, NodeFactory.createLiteral(values.get("DOI"), XSDDatatype.XSDstring));
+        emit(paper, v.title, NodeFactory.createLiteral(values.get("Title"), XSDDatatype.XSDstring));
+        emit(paper, v.paperAbstract, NodeFactory.createLiteral(values.get("Abstract"), XSDDatatype.XSDstring));
+        return paper;
+    }
+
+    private void createAuthorPaper(String id, String name, Node paper) {
+        Node author = v.nodes.uri("A", id);
+
+        if (state.addAuthor(id)) {
+            emit(author, v.type, v.author);
+        }
+
+        if (state.addAuthorName(id, name)) {
+            emit(author, v.name, NodeFactory.createLiteral(name, XSDDatatype.XSDstring));
+        }
+
+        emit(author, v.authors, paper);
+    }
+
+    private void emit(Node subject, Node property, Node object) {
+        out.triple(Triple.create(subject, property, object));
+        metrics.triple();
+    }
+
+    // IRIs of the state are rebuilt from numbers every time they are asked for, the cache keeps one Node each
+    private Node uri(String iri) {
+        return v.nodes.uri(iri);
+    }
+}
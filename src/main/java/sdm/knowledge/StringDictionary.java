@@ -0,0 +1,150 @@
+package sdm.knowledge;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Maps strings to dense int ids (0, 1, 2, ... in insertion order). The UTF-8 bytes of the keys are kept in
+// direct buffers outside the heap; the heap only holds the open addressing table and two ints per key.
+public class StringDictionary {
+    private static final int PAGE_BITS = 20;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    private final List<ByteBuffer> pages = new ArrayList<>();
+    private long[] addresses = new long[1024];
+    private int[] hashes = new int[1024];
+    private int[] table = new int[2048];
+    private int size = 0;
+    private int used = PAGE_SIZE;
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // Id of the key, or -1 if it has not been added
+    public synchronized int id(String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(bytes);
+        int slot = find(bytes, hash);
+        return table[slot] - 1;
+    }
+
+    public synchronized boolean contains(String key) {
+        return id(key) >= 0;
+    }
+
+    // True if the key was not in the dictionary before
+    public synchronized boolean insert(String key) {
+        int size = this.size;
+        add(key);
+        return this.size > size;
+    }
+
+    // Id of the key, adding it if it is new. New keys get id size() - 1 afterwards.
+    public synchronized int add(String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(bytes);
+        int slot = find(bytes, hash);
+        if (table[slot] != 0) {
+            return table[slot] - 1;
+        }
+
+        int id = size++;
+        if (id == addresses.length) {
+            addresses = Arrays.copyOf(addresses, id * 2);
+            hashes = Arrays.copyOf(hashes, id * 2);
+        }
+        addresses[id] = store(bytes);
+        hashes[id] = hash;
+        table[slot] = id + 1;
+        if (size * 2 > table.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    public synchronized String get(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("No key with id " + id);
+        }
+        ByteBuffer page = pages.get((int) (addresses[id] >>> PAGE_BITS));
+        int offset = (int) (addresses[id] & (PAGE_SIZE - 1));
+        int length = page.getInt(offset);
+        byte[] bytes = new byte[length];
+        page.get(offset + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public synchronized long offHeapBytes() {
+        return (long) pages.size() * PAGE_SIZE;
+    }
+
+    public synchronized long heapBytes() {
+        return 8L * addresses.length + 4L * hashes.length + 4L * table.length;
+    }
+
+    // Slot holding the key, or the empty slot where it would go
+    private int find(byte[] bytes, int hash) {
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != 0) {
+            int id = table[slot] - 1;
+            if (hashes[id] == hash && matches(id, bytes)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private boolean matches(int id, byte[] bytes) {
+        ByteBuffer page = pages.get((int) (addresses[id] >>> PAGE_BITS));
+        int offset = (int) (addresses[id] & (PAGE_SIZE - 1));
+        if (page.getInt(offset) != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (page.get(offset + 4 + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Keys are stored as a length followed by the bytes and never cross a page boundary
+    private long store(byte[] bytes) {
+        int length = bytes.length + 4;
+        if (length > PAGE_SIZE) {
+            throw new IllegalArgumentException("Key longer than " + (PAGE_SIZE - 4) + " bytes");
+        }
+        if (used + length > PAGE_SIZE) {
+            pages.add(ByteBuffer.allocateDirect(PAGE_SIZE));
+            used = 0;
+        }
+        ByteBuffer page = pages.get(pages.size() - 1);
+        page.putInt(used, bytes.length);
+        page.put(used + 4, bytes);
+        long address = ((long) (pages.size() - 1) << PAGE_BITS) | used;
+        used += length;
+        return address;
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        int mask = table.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id + 1;
+        }
+    }
+
+    private static int hash(byte[] bytes) {
+        int h = Arrays.hashCode(bytes);
+        return h ^ (h >>> 16);
+    }
+}
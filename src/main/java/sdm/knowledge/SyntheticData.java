@@ -0,0 +1,288 @@
+package sdm.knowledge;
+
+import com.opencsv.CSVWriter;
+import com.opencsv.exceptions.CsvValidationException;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.*;
+
+// Grows an input to <scale> times its papers for load tests. The input rows come first, unchanged, followed
+// by scale - 1 synthetic copies of every paper. A copy keeps the title, abstract, year, volume and type of
+// its paper, is published in a copy of its venue and gets a new DOI. Its authors, keywords, citations and
+// reviews are drawn from the input:
+//   - the number of authors, keywords, citations and reviewers is the one of a random input paper, so their
+//     distributions are kept;
+//   - authors, keywords and cited papers are drawn from their occurrences in the input, so productive authors,
+//     common keywords and much cited papers stay that way. Authors and cited papers may be in any copy;
+//   - reviewers are authors of random papers of the same copy, so every reviewer is an author of a generated
+//     paper, and decisions and review texts are those of a random reviewed input paper.
+// Every copy of a paper is generated from a random generator seeded with the seed, the copy and the paper,
+// so the rows only depend on the input, the scale and the seed.
+public class SyntheticData implements ABoxSource {
+    private static final String[] PAPER_COLUMNS = {"Authors", "Author(s) ID", "Title", "Year", "Source title", "Volume",
+            "DOI", "Abstract", "Index Keywords", "Document Type"};
+
+    private final int scale;
+    private final long seed;
+
+    private final List<Map<String, String>> papers = new ArrayList<>();
+    private final List<Map<String, String>> citations = new ArrayList<>();
+    private final List<Map<String, String>> reviews = new ArrayList<>();
+    private final List<Map<String, String>> reviewers = new ArrayList<>();
+
+    private final Map<String, String> authorNames = new HashMap<>();
+    private final List<String> authorOccurrences = new ArrayList<>();
+    private final List<String> keywordOccurrences = new ArrayList<>();
+    private final int[] authorCounts;
+    private final int[] keywordCounts;
+    private final int[] citationCounts;
+    private final List<Integer> citedOccurrences = new ArrayList<>();
+    // Reviews of the reviewed papers, by their reviewers row
+    private final List<List<Map<String, String>>> reviewTemplates = new ArrayList<>();
+
+    public SyntheticData(ABoxSource input, int scale, long seed) throws IOException, CsvValidationException {
+        this.scale = scale;
+        this.seed = seed;
+        readAll(input.papers(), papers);
+        readAll(input.citations(), citations);
+        readAll(input.reviews(), reviews);
+        readAll(input.reviewers(), reviewers);
+
+        Map<String, Integer> paperIndexes = new HashMap<>();
+        authorCounts = new int[papers.size()];
+        keywordCounts = new int[papers.size()];
+        for (int i = 0; i < papers.size(); i++) {
+            Map<String, String> paper = papers.get(i);
+            paperIndexes.put(paper.get("DOI"), i);
+            String[] names = paper.get("Authors").split(", ");
+            String[] ids = paper.get("Author(s) ID").split(";");
+            for (int j = 0; j < ids.length; j++) {
+                authorNames.putIfAbsent(ids[j], j < names.length ? names[j] : ids[j]);
+                authorOccurrences.add(ids[j]);
+            }
+            authorCounts[i] = ids.length;
+            String[] keywords = paper.get("Index Keywords").split("; ");
+            keywordOccurrences.addAll(Arrays.asList(keywords));
+            keywordCounts[i] = keywords.length;
+        }
+
+        citationCounts = new int[papers.size()];
+        for (Map<String, String> citation : citations) {
+            Integer citing = paperIndexes.get(citation.get("Paper"));
+            Integer cited = paperIndexes.get(citation.get("Citation"));
+            if (citing == null || cited == null) continue;
+            citationCounts[citing]++;
+            citedOccurrences.add(cited);
+        }
+
+        Map<String, List<Map<String, String>>> paperReviews = new HashMap<>();
+        for (Map<String, String> review : reviews) {
+            paperReviews.computeIfAbsent(review.get("Paper"), p -> new ArrayList<>()).add(review);
+        }
+        for (Map<String, String> row : reviewers) {
+            // The reviewers of a paper need a revision, so only papers with an accepted review are used and the
+            // accepted reviews go first, in case a copy gets fewer reviewers
+            List<Map<String, String>> template = new ArrayList<>(paperReviews.getOrDefault(row.get("Paper"), List.of()));
+            template.sort(Comparator.comparing(review -> review.get("Decision").equals("False")));
+            if (!template.isEmpty() && !template.get(0).get("Decision").equals("False")) {
+                reviewTemplates.add(template);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException, CsvValidationException {
+        if (args.length < 2) {
+            System.out.println("Invalid arguments");
+            System.out.println("Usage: java SyntheticData <resources path> <output path>");
+            System.out.println("\t <resources path>:   folder with data.csv, citations.csv, reviews.csv and reviewers.csv, e.g. ./src/main/resources/");
+            System.out.println("\t <output path>:      folder the four csvs of the grown data are written to, e.g. ./target/x10/");
+            System.out.println("\t --scale=<n>:        papers of the output per input paper (default 10).");
+            System.out.println("\t --seed=<n>:         seed of the generated rows (default 0). The same input, scale and seed give the same csvs.");
+            System.out.println("\t --starting-data:    <resources path> is the starting_data folder, see ABox --starting-data.");
+            return;
+        }
+        Options options = new Options(args, 2);
+        String output = args[1].endsWith("/") ? args[1] : args[1] + "/";
+        long start = System.nanoTime();
+        ABoxSource input = options.has("starting-data")
+                ? new StartingData(args[0], Runtime.getRuntime().availableProcessors()) : ABoxSource.csv(args[0]);
+        SyntheticData data = new SyntheticData(input, options.getInt("scale", 10), options.getInt("seed", 0));
+
+        long papers = write(data.papers(), output + "data.csv", PAPER_COLUMNS);
+        long citations = write(data.citations(), output + "citations.csv", "Paper", "Citation");
+        long reviews = write(data.reviews(), output + "reviews.csv", "Paper", "Reviewer", "Decision", "Review");
+        write(data.reviewers(), output + "reviewers.csv", "Paper", "Reviewers");
+        System.out.printf("Wrote %d papers, %d citations and %d reviews in %.1fs%n",
+                papers, citations, reviews, (System.nanoTime() - start) / 1e9);
+    }
+
+    private static long write(Rows rows, String path, String... columns) throws IOException, CsvValidationException {
+        long count = 0;
+        try (CSVWriter writer = new CSVWriter(new FileWriter(path))) {
+            writer.writeNext(columns, false);
+            String[] line = new String[columns.length];
+            Map<String, String> row;
+            while ((row = rows.next()) != null) {
+                for (int i = 0; i < columns.length; i++) {
+                    line[i] = row.get(columns[i]);
+                }
+                writer.writeNext(line, false);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public Rows papers() {
+        return rows(papers, (copy, paper) -> List.of(paper(copy, paper)));
+    }
+
+    @Override
+    public Rows citations() {
+        return rows(citations, this::citations);
+    }
+
+    @Override
+    public Rows reviews() {
+        return rows(reviews, (copy, paper) -> reviews(copy, paper, true));
+    }
+
+    @Override
+    public Rows reviewers() {
+        return rows(reviewers, (copy, paper) -> reviews(copy, paper, false));
+    }
+
+    private interface Generator {
+        List<Map<String, String>> rows(int copy, int paper);
+    }
+
+    // The input rows, then the rows generated for every paper of copies 1 to scale - 1
+    private Rows rows(List<Map<String, String>> input, Generator generator) {
+        Iterator<Map<String, String>> inputRows = input.iterator();
+        return new Rows() {
+            private Iterator<Map<String, String>> current = inputRows;
+            private int copy = 1;
+            private int paper = 0;
+
+            @Override
+            public Map<String, String> next() {
+                while (!current.hasNext()) {
+                    if (copy >= scale || papers.isEmpty()) return null;
+                    current = generator.rows(copy, paper).iterator();
+                    if (++paper == papers.size()) {
+                        paper = 0;
+                        copy++;
+                    }
+                }
+                return current.next();
+            }
+        };
+    }
+
+    // ---------------------
+    // ------Generated------
+    // ---------------------
+
+    private Map<String, String> paper(int copy, int paper) {
+        SplittableRandom random = random(0, copy, paper);
+        Map<String, String> base = papers.get(paper);
+        Map<String, String> row = new HashMap<>(base);
+        row.put("DOI", doi(copy, paper));
+        row.put("Source title", base.get("Source title") + " " + copy);
+
+        Set<String> ids = new LinkedHashSet<>();
+        int authors = authorCounts[random.nextInt(papers.size())];
+        for (int attempt = 0; ids.size() < authors && attempt < authors * 4; attempt++) {
+            ids.add(copyOf(authorOccurrences.get(random.nextInt(authorOccurrences.size())), random.nextInt(scale)));
+        }
+        List<String> names = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            int separator = id.indexOf('S');
+            String name = authorNames.get(separator < 0 ? id : id.substring(0, separator));
+            names.add(separator < 0 ? name : name + " " + id.substring(separator + 1));
+        }
+        row.put("Authors", String.join(", ", names));
+        row.put("Author(s) ID", String.join(";", ids));
+
+        Set<String> keywords = new LinkedHashSet<>();
+        int count = keywordCounts[random.nextInt(papers.size())];
+        for (int attempt = 0; keywords.size() < count && attempt < count * 4; attempt++) {
+            keywords.add(keywordOccurrences.get(random.nextInt(keywordOccurrences.size())));
+        }
+        row.put("Index Keywords", String.join("; ", keywords));
+        return row;
+    }
+
+    private List<Map<String, String>> citations(int copy, int paper) {
+        if (citedOccurrences.isEmpty()) return List.of();
+        SplittableRandom random = random(1, copy, paper);
+        String citing = doi(copy, paper);
+        Set<String> cited = new LinkedHashSet<>();
+        int count = citationCounts[random.nextInt(papers.size())];
+        for (int i = 0; i < count; i++) {
+            String doi = doi(random.nextInt(scale), citedOccurrences.get(random.nextInt(citedOccurrences.size())));
+            if (!doi.equals(citing)) cited.add(doi);
+        }
+        List<Map<String, String>> rows = new ArrayList<>(cited.size());
+        for (String doi : cited) {
+            rows.add(Map.of("Paper", citing, "Citation", doi));
+        }
+        return rows;
+    }
+
+    // The reviews.csv rows of a paper, or its reviewers.csv row. Both are generated from the same random
+    // generator so they name the same reviewers.
+    private List<Map<String, String>> reviews(int copy, int paper, boolean reviewRows) {
+        if (reviewTemplates.isEmpty()) return List.of();
+        SplittableRandom random = random(2, copy, paper);
+        List<Map<String, String>> template = reviewTemplates.get(random.nextInt(reviewTemplates.size()));
+        Set<String> authors = new HashSet<>(Arrays.asList(authorIds(copy, paper)));
+        Set<String> reviewerIds = new LinkedHashSet<>();
+        for (int attempt = 0; reviewerIds.size() < template.size() && attempt < template.size() * 4; attempt++) {
+            String[] ids = authorIds(copy, random.nextInt(papers.size()));
+            String id = ids[random.nextInt(ids.length)];
+            if (!id.isEmpty() && !authors.contains(id)) reviewerIds.add(id);
+        }
+        if (reviewerIds.isEmpty()) return List.of();
+
+        String doi = doi(copy, paper);
+        if (!reviewRows) {
+            return List.of(Map.of("Paper", doi, "Reviewers", String.join(";", reviewerIds)));
+        }
+        List<Map<String, String>> rows = new ArrayList<>(reviewerIds.size());
+        int i = 0;
+        for (String id : reviewerIds) {
+            Map<String, String> review = template.get(i++);
+            rows.add(Map.of("Paper", doi, "Reviewer", id, "Decision", review.get("Decision"), "Review", review.get("Review")));
+        }
+        return rows;
+    }
+
+    // The authors of a paper of the input or of a copy
+    private String[] authorIds(int copy, int paper) {
+        return (copy == 0 ? papers.get(paper) : paper(copy, paper)).get("Author(s) ID").split(";");
+    }
+
+    private String doi(int copy, int paper) {
+        String doi = papers.get(paper).get("DOI");
+        return copy == 0 ? doi : doi + "/S" + copy;
+    }
+
+    // Author ids of the input are numbers, so the copy can be appended after an "S"
+    private static String copyOf(String authorId, int copy) {
+        return copy == 0 ? authorId : authorId + "S" + copy;
+    }
+
+    private SplittableRandom random(int stream, int copy, int paper) {
+        return new SplittableRandom(seed * 0x9e3779b97f4a7c15L + ((long) stream << 56) + ((long) copy << 28) + paper);
+    }
+
+    private static void readAll(Rows rows, List<Map<String, String>> list) throws IOException, CsvValidationException {
+        Map<String, String> row;
+        while ((row = rows.next()) != null) {
+            list.add(new HashMap<>(row));
+        }
+    }
+}
@@ -3,11 +3,8 @@ package sdm.knowledge;
 import org.apache.jena.datatypes.xsd.XSDDatatype;
 import org.apache.jena.ontology.*;
 import org.apache.jena.rdf.model.ModelFactory;
-import org.apache.jena.riot.RDFDataMgr;
-import org.apache.jena.riot.RDFFormat;
 import org.apache.jena.vocabulary.RDFS;
 
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
@@ -187,18 +184,24 @@ public class TBox {
             System.out.println("Usage: java TBox <output path>");
             System.out.println("\t <output path>: path to file where the TBOX triples will be saved to.");
             System.out.println("\t                ./src/main/resources/tbox.ttl");
+            System.out.println("\t --format=<format>: turtle, turtle-blocks, ntriples, thrift or protobuf. By default taken from the");
+            System.out.println("\t                extension of <output path> (.ttl, .nt, .trdf, .rpb). A trailing .gz or .zst compresses it.");
         }
         String outputPath = args[0];
+        Options options = new Options(args, 1);
 
         OntModel m = createBaseModel();
         extendModel(m);
 
-        FileOutputStream output = new FileOutputStream(outputPath);
-        RDFDataMgr.write(output, m, RDFFormat.TURTLE);
+        OutputFormat.of(outputPath, options.get("format", null)).write(outputPath, m.getGraph());
     }
 
-    private static OntModel createBaseModel() {
-        OntModel m = ModelFactory.createOntologyModel(OntModelSpec.OWL_DL_MEM);
+    public static OntModel createBaseModel() {
+        return createBaseModel(OntModelSpec.OWL_DL_MEM);
+    }
+
+    public static OntModel createBaseModel(OntModelSpec spec) {
+        OntModel m = ModelFactory.createOntologyModel(spec);
         m.setNsPrefix("fd", NS);
         m.setNsPrefix("dbpo", DBPO);
 
@@ -323,7 +326,7 @@ public class TBox {
         return m;
     }
 
-    private static void extendModel(OntModel m) {
+    public static void extendModel(OntModel m) {
 
         // -----------------------------
         // ------Class Hierarchies------
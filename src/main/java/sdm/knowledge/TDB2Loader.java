@@ -0,0 +1,152 @@
+package sdm.knowledge;
+
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.system.progress.MonitorOutput;
+import org.apache.jena.tdb2.DatabaseMgr;
+import org.apache.jena.tdb2.loader.DataLoader;
+import org.apache.jena.tdb2.loader.LoaderFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+// Loads triples into the default graph of an on-disk TDB2 dataset with one of the TDB2 bulk loaders.
+// With a batch size every batch is a separate bulk load and write transaction, so an interrupted load
+// keeps the batches that were already committed. Without one the whole load is a single transaction.
+// Every commit rewrites a version file in the database directory, which tells the QueryCache of other
+// processes over the database that it changed.
+public class TDB2Loader {
+    private static final String VERSION_FILE = "abox.version";
+
+    private final DatasetGraph dataset;
+    private final Path versionFile;
+    private final String loader;
+    private final int batchSize;
+    private final MonitorOutput monitor;
+    private DataLoader current;
+    private long loaded = 0;
+
+    public TDB2Loader(String location, String loader, int batchSize, boolean verbose) {
+        this.dataset = DatabaseMgr.connectDatasetGraph(location);
+        this.versionFile = versionFile(location);
+        this.loader = loader;
+        this.batchSize = batchSize;
+        this.monitor = verbose ? (fmt, args) -> System.out.println(String.format(fmt, args)) : (fmt, args) -> {
+        };
+    }
+
+    public DatasetGraph getDataset() {
+        return dataset;
+    }
+
+    public long getLoaded() {
+        return loaded;
+    }
+
+    // The returned stream must be finished to load the last batch.
+    public StreamRDF stream() {
+        if (batchSize <= 0) {
+            return new StreamRDFBase() {
+                private StreamRDF destination;
+
+                @Override
+                public void start() {
+                    current = createLoader();
+                    current.startBulk();
+                    destination = current.stream();
+                    destination.start();
+                }
+
+                @Override
+                public void triple(Triple triple) {
+                    destination.triple(triple);
+                    loaded++;
+                }
+
+                @Override
+                public void finish() {
+                    destination.finish();
+                    current.finishBulk();
+                    current = null;
+                    committed();
+                }
+            };
+        }
+
+        return new StreamRDFBase() {
+            private final List<Triple> batch = new ArrayList<>(batchSize);
+
+            @Override
+            public void triple(Triple triple) {
+                batch.add(triple);
+                if (batch.size() == batchSize) {
+                    load(batch);
+                    batch.clear();
+                }
+            }
+
+            @Override
+            public void finish() {
+                if (!batch.isEmpty()) {
+                    load(batch);
+                    batch.clear();
+                }
+            }
+        };
+    }
+
+    // Aborts the transaction of the load in progress, if any
+    public void abort(Exception e) {
+        if (current != null) {
+            current.finishException(e);
+            current = null;
+        }
+    }
+
+    private void load(List<Triple> batch) {
+        current = createLoader();
+        current.startBulk();
+        StreamRDF destination = current.stream();
+        destination.start();
+        batch.forEach(destination::triple);
+        destination.finish();
+        current.finishBulk();
+        current = null;
+        loaded += batch.size();
+        committed();
+    }
+
+    static Path versionFile(String location) {
+        return Paths.get(location, VERSION_FILE);
+    }
+
+    private void committed() {
+        try {
+            Files.writeString(versionFile, System.currentTimeMillis() + " " + loaded + "\n");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private DataLoader createLoader() {
+        switch (loader) {
+            case "parallel":
+                return LoaderFactory.parallelLoader(dataset, monitor);
+            case "phased":
+                return LoaderFactory.phasedLoader(dataset, monitor);
+            case "sequential":
+                return LoaderFactory.sequentialLoader(dataset, monitor);
+            case "basic":
+                return LoaderFactory.basicLoader(dataset, monitor);
+            default:
+                throw new IllegalArgumentException("Unknown TDB2 loader: " + loader);
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package sdm.knowledge;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.QueryExecException;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingBuilder;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.iterator.QueryIterPlainWrapper;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.apache.jena.sparql.pfunction.PropFuncArg;
+import org.apache.jena.sparql.pfunction.PropertyFunctionBase;
+import org.apache.jena.sparql.pfunction.PropertyFunctionRegistry;
+import org.apache.jena.sparql.util.Symbol;
+import org.apache.jena.system.Txn;
+import org.apache.jena.vocabulary.RDFS;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Lucene index of the literals of the properties the TBOX declares as subproperties of rdfs:label and
+// rdfs:comment (title, abstract, review_text, keyword, venue_name, name), so they can be searched by words
+// instead of scanned with FILTER regex. Every literal is a document with its subject, its property and its
+// analyzed text. Queries reach it through the property function text:query, registered with ARQ and looking
+// the index up in the context of the dataset:
+//
+//   PREFIX text: <http://jena.apache.org/text#>
+//   SELECT ?paper ?score WHERE { (?paper ?score) text:query (fd:title "graph database" 20) }
+//
+// The subject is a resource or a list (resource score literal); the object is a Lucene query, or a list with an
+// optional property, the query and an optional limit. The syntax is the one of jena-text, which has no 4.4.0
+// release, so queries keep working if it is used instead.
+public class TextIndex implements Closeable {
+    public static final String TEXT_NS = "http://jena.apache.org/text#";
+    public static final String QUERY = TEXT_NS + "query";
+    // Key of the index in the context of a dataset
+    public static final Symbol INDEX = Symbol.create(TEXT_NS + "index");
+
+    private static final String URI_FIELD = "uri";
+    private static final String PROPERTY_FIELD = "property";
+    private static final String TEXT_FIELD = "text";
+    private static final Node LABEL = RDFS.label.asNode();
+    private static final Node COMMENT = RDFS.comment.asNode();
+
+    private final Directory directory;
+    private final DirectoryReader reader;
+    private final IndexSearcher searcher;
+    private final Analyzer analyzer = new StandardAnalyzer();
+
+    public static class Hit {
+        final Node resource;
+        final float score;
+        final String text;
+
+        Hit(Node resource, float score, String text) {
+            this.resource = resource;
+            this.score = score;
+            this.text = text;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Invalid arguments");
+            System.out.println("Usage: java TextIndex <index path> (--memory=<files> | --tdb2=<dir> | --search=<query>)");
+            System.out.println("\t <index path>:        directory of the Lucene index, e.g. ./target/text");
+            System.out.println("\t --memory=<files>:    build the index from comma separated RDF files with the TBOX and ABOX.");
+            System.out.println("\t --tdb2=<dir>:        build the index from a TDB2 database, e.g. one loaded with ABox --tdb2.");
+            System.out.println("\t --threads=<n>:       index the properties on <n> threads (default: available processors).");
+            System.out.println("\t --search=<query>:    search an existing index with a Lucene query and print the hits.");
+            System.out.println("\t --property=<iri>:    only search the literals of <iri>, e.g. https://ferrazzi.divi/#title");
+            System.out.println("\t --limit=<n>:         hits to print (default 10).");
+            return;
+        }
+        Options options = new Options(args, 1);
+        if (options.has("search")) {
+            try (TextIndex index = new TextIndex(args[0])) {
+                for (Hit hit : index.search(options.get("property", null), options.get("search", ""), options.getInt("limit", 10))) {
+                    System.out.printf("%8.3f  %s  %s%n", hit.score, hit.resource.getURI(), hit.text);
+                }
+            }
+            return;
+        }
+        DatasetGraph dataset = SparqlServer.open(options);
+        int threads = options.getInt("threads", Runtime.getRuntime().availableProcessors());
+        Txn.executeRead(dataset, () -> {
+            try {
+                build(dataset.getDefaultGraph(), args[0], threads, new PipelineMetrics());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    // Opens an index built with build for searching
+    public TextIndex(String path) throws IOException {
+        directory = FSDirectory.open(Path.of(path));
+        reader = DirectoryReader.open(directory);
+        searcher = new IndexSearcher(reader);
+    }
+
+    // Makes the index searchable with text:query over dataset
+    public void attach(DatasetGraph dataset) {
+        register();
+        dataset.getContext().set(INDEX, this);
+    }
+
+    public static void register() {
+        PropertyFunctionRegistry.get().put(QUERY, uri -> new Search());
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+        directory.close();
+    }
+
+    // ---------------------
+    // -------Building------
+    // ---------------------
+
+    // Replaces the index at path with the literals of the label and comment subproperties of graph, which holds
+    // the TBOX too. Every property is indexed on its own task; the IndexWriter takes documents from all of them.
+    public static long build(Graph graph, String path, int threads, PipelineMetrics metrics) throws IOException {
+        metrics.start("text_index");
+        long start = System.nanoTime();
+        List<Node> properties = textProperties(graph);
+        long documents = 0;
+        IndexWriterConfig config = new IndexWriterConfig(new StandardAnalyzer())
+                .setOpenMode(IndexWriterConfig.OpenMode.CREATE)
+                .setRAMBufferSizeMB(256);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (Directory directory = FSDirectory.open(Path.of(path)); IndexWriter writer = new IndexWriter(directory, config)) {
+            List<Future<Long>> tasks = new ArrayList<>();
+            for (Node property : properties) {
+                tasks.add(executor.submit(() -> index(graph, property, writer)));
+            }
+            for (Future<Long> task : tasks) {
+                documents += task.get();
+            }
+            writer.commit();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+        metrics.end(0);
+        metrics.set("text_index_documents", documents);
+        System.out.printf("Indexed %d literals of %d properties in %.1fs%n", documents, properties.size(), (System.nanoTime() - start) / 1e9);
+        return documents;
+    }
+
+    private static long index(Graph graph, Node property, IndexWriter writer) throws IOException {
+        long documents = 0;
+        Iterator<Triple> triples = graph.find(Node.ANY, property, Node.ANY);
+        while (triples.hasNext()) {
+            Triple triple = triples.next();
+            if (!triple.getSubject().isURI() || !triple.getObject().isLiteral()) continue;
+            Document document = new Document();
+            document.add(new StringField(URI_FIELD, triple.getSubject().getURI(), Field.Store.YES));
+            document.add(new StringField(PROPERTY_FIELD, property.getURI(), Field.Store.NO));
+            document.add(new TextField(TEXT_FIELD, triple.getObject().getLiteralLexicalForm(), Field.Store.YES));
+            writer.addDocument(document);
+            documents++;
+        }
+        return documents;
+    }
+
+    // The properties below rdfs:label or rdfs:comment, themselves included
+    private static List<Node> textProperties(Graph graph) {
+        Map<Node, List<Node>> subProperties = new HashMap<>();
+        graph.find(Node.ANY, RDFS.subPropertyOf.asNode(), Node.ANY).forEachRemaining(t -> {
+            if (t.getSubject().isURI()) subProperties.computeIfAbsent(t.getObject(), p -> new ArrayList<>()).add(t.getSubject());
+        });
+        Set<Node> reached = new LinkedHashSet<>();
+        Deque<Node> pending = new ArrayDeque<>(List.of(LABEL, COMMENT));
+        while (!pending.isEmpty()) {
+            Node property = pending.poll();
+            if (reached.add(property)) {
+                pending.addAll(subProperties.getOrDefault(property, Collections.emptyList()));
+            }
+        }
+        return new ArrayList<>(reached);
+    }
+
+    // ---------------------
+    // -------Search--------
+    // ---------------------
+
+    // The best hits of a Lucene query over the literals of property, or of all of them if it is null
+    public List<Hit> search(String property, String query, int limit) throws IOException {
+        Query parsed;
+        try {
+            parsed = new QueryParser(TEXT_FIELD, analyzer).parse(query);
+        } catch (ParseException e) {
+            throw new QueryExecException("Invalid text query \"" + query + "\": " + e.getMessage());
+        }
+        if (property != null) {
+            parsed = new BooleanQuery.Builder()
+                    .add(parsed, BooleanClause.Occur.MUST)
+                    .add(new TermQuery(new Term(PROPERTY_FIELD, property)), BooleanClause.Occur.FILTER)
+                    .build();
+        }
+        List<Hit> hits = new ArrayList<>();
+        for (ScoreDoc scoreDoc : searcher.search(parsed, Math.max(1, Math.min(limit, reader.maxDoc()))).scoreDocs) {
+            Document document = searcher.doc(scoreDoc.doc);
+            hits.add(new Hit(NodeFactory.createURI(document.get(URI_FIELD)), scoreDoc.score, document.get(TEXT_FIELD)));
+        }
+        return hits;
+    }
+
+    // text:query
+    private static class Search extends PropertyFunctionBase {
+        @Override
+        public QueryIterator exec(Binding binding, PropFuncArg subject, Node predicate, PropFuncArg object, ExecutionContext execCxt) {
+            Object index = execCxt.getContext().get(INDEX);
+            if (!(index instanceof TextIndex)) {
+                throw new QueryExecException("text:query needs a text index in the dataset context, see TextIndex.attach");
+            }
+            List<Node> arguments = object.isList() ? object.getArgList() : List.of(object.getArg());
+            int next = 0;
+            String property = null;
+            Node first = value(binding, arguments.get(0));
+            if (first.isURI()) {
+                property = first.getURI();
+                next++;
+            }
+            if (next >= arguments.size() || !value(binding, arguments.get(next)).isLiteral()) {
+                throw new QueryExecException("text:query needs a query string");
+            }
+            String query = value(binding, arguments.get(next++)).getLiteralLexicalForm();
+            int limit = Integer.MAX_VALUE;
+            if (next < arguments.size()) {
+                limit = Integer.parseInt(value(binding, arguments.get(next)).getLiteralLexicalForm());
+            }
+
+            List<Node> outputs = subject.isList() ? subject.getArgList() : List.of(subject.getArg());
+            List<Binding> results = new ArrayList<>();
+            try {
+                for (Hit hit : ((TextIndex) index).search(property, query, limit)) {
+                    BindingBuilder builder = BindingFactory.builder(binding);
+                    if (bind(builder, binding, outputs, 0, hit.resource)
+                            && bind(builder, binding, outputs, 1, NodeValue.makeFloat(hit.score).asNode())
+                            && bind(builder, binding, outputs, 2, NodeFactory.createLiteral(hit.text))) {
+                        results.add(builder.build());
+                    }
+                }
+            } catch (IOException e) {
+                throw new QueryExecException(e);
+            }
+            return QueryIterPlainWrapper.create(results.iterator(), execCxt);
+        }
+
+        private static Node value(Binding binding, Node node) {
+            if (!node.isVariable()) return node;
+            Node value = binding.get(Var.alloc(node));
+            if (value == null) throw new QueryExecException("text:query argument " + node + " is not bound");
+            return value;
+        }
+
+        // Binds the output at position to value, or checks it if it is a constant or already bound
+        private static boolean bind(BindingBuilder builder, Binding binding, List<Node> outputs, int position, Node value) {
+            if (position >= outputs.size()) return true;
+            Node output = outputs.get(position);
+            if (!output.isVariable()) return output.equals(value);
+            Node bound = binding.get(Var.alloc(output));
+            if (bound != null) return bound.equals(value);
+            builder.add(Var.alloc(output), value);
+            return true;
+        }
+    }
+}
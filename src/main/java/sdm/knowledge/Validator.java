@@ -0,0 +1,364 @@
+package sdm.knowledge;
+
+import org.apache.jena.atlas.json.JSON;
+import org.apache.jena.atlas.json.JsonArray;
+import org.apache.jena.atlas.json.JsonObject;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.GraphUtil;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.apache.jena.vocabulary.OWL;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Checks an ABOX against the cardinality and allValuesFrom restrictions of the TBOX without a reasoner. The
+// restrictions are read from the rdfs:subClassOf links of the schema into one check per class and property;
+// every resource of the graph is then checked on its own, from the triples it is the subject or object of and
+// the ones the Materializer rules infer from them. So an ABOX that only asserts authors is checked against the
+// restrictions on authored_by, and a Full_paper against those of Paper. Chunks of resources are checked on a
+// thread pool and the violations of every chunk are written as soon as it is done.
+//
+// The checks are closed world with unique names: a Revision with one done_by violates "min 2 done_by", where a
+// reasoner would assume the missing reviewer exists, and two values of a "max 1" property are two values.
+public class Validator {
+    private static final Node TYPE = RDF.type.asNode();
+
+    private final Graph graph;
+    private final Materializer rules;
+    private final Map<Node, List<Restriction>> restrictions = new LinkedHashMap<>();
+    private final int threads;
+    private final int chunkSize;
+    // Types of the values of allValuesFrom properties, which are few and shared (venues, years...)
+    private final Map<Node, Set<Node>> valueTypes = new ConcurrentHashMap<>();
+    private PipelineMetrics metrics = new PipelineMetrics();
+    private long limit = Long.MAX_VALUE;
+
+    enum Kind {
+        MIN("min"), MAX("max"), EXACTLY("exactly"), ONLY("only");
+
+        final String keyword;
+
+        Kind(String keyword) {
+            this.keyword = keyword;
+        }
+    }
+
+    static class Restriction {
+        final Node onClass;
+        final Node property;
+        final Kind kind;
+        final int cardinality;
+        final Node filler;
+        final LongAdder checked = new LongAdder();
+        final LongAdder violations = new LongAdder();
+
+        Restriction(Node onClass, Node property, Kind kind, int cardinality, Node filler) {
+            this.onClass = onClass;
+            this.property = property;
+            this.kind = kind;
+            this.cardinality = cardinality;
+            this.filler = filler;
+        }
+
+        // Manchester syntax, e.g. "Revision: done_by min 2"
+        @Override
+        public String toString() {
+            String restriction = localName(onClass) + ": " + localName(property) + " " + kind.keyword + " ";
+            return restriction + (kind == Kind.ONLY ? localName(filler) : String.valueOf(cardinality));
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Invalid arguments");
+            System.out.println("Usage: java Validator <TBOX path> <ABOX paths>");
+            System.out.println("\t <TBOX path>:          path to ttl file containing the TBOX generated with the TBOX class.");
+            System.out.println("\t                       ./src/main/resources/tbox.ttl");
+            System.out.println("\t <ABOX paths>:         comma separated RDF files with the ABOX, e.g. ./src/main/resources/abox.ttl");
+            System.out.println("\t --violations=<path>:  write every violation to <path> as a tab separated line with the resource,");
+            System.out.println("\t                       the restriction and the values found (default: standard output).");
+            System.out.println("\t --limit=<n>:          write at most <n> violations. All of them are still counted in the summary.");
+            System.out.println("\t --report=<path>:      write the summary as JSON to <path>.");
+            System.out.println("\t --threads=<n>:        check chunks of resources on <n> threads (default: available processors).");
+            System.out.println("\t --chunk=<resources>:  resources per chunk (default 10000).");
+            System.out.println("\t Exits with status 1 if there are violations.");
+            return;
+        }
+        Options options = new Options(args, 2);
+        Graph schema = GraphFactory.createGraphMem();
+        RDFDataMgr.read(schema, args[0]);
+        Graph graph = GraphFactory.createGraphMem();
+        for (String input : args[1].split(",")) {
+            RDFDataMgr.read(graph, input);
+        }
+
+        Validator validator = new Validator(schema, graph,
+                options.getInt("threads", Runtime.getRuntime().availableProcessors()), options.getInt("chunk", 10000));
+        validator.setLimit(options.getInt("limit", Integer.MAX_VALUE));
+        String violationsPath = options.get("violations", null);
+        long violations;
+        try (Writer out = violationsPath == null
+                ? new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))
+                : new BufferedWriter(new FileWriter(violationsPath, StandardCharsets.UTF_8))) {
+            violations = validator.validate(out);
+        }
+        validator.printSummary();
+        if (options.has("report")) {
+            validator.writeReport(options.get("report", null));
+        }
+        if (violations > 0) {
+            System.exit(1);
+        }
+    }
+
+    // Compiles the restrictions of schema, which may also be the graph itself, to check graph
+    public Validator(Graph schema, Graph graph, int threads, int chunkSize) {
+        this.graph = graph;
+        this.rules = new Materializer(schema, threads, chunkSize);
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+        schema.find(Node.ANY, RDFS.subClassOf.asNode(), Node.ANY).forEachRemaining(t -> {
+            if (!t.getSubject().isURI()) return;
+            Restriction restriction = restriction(schema, t.getSubject(), t.getObject());
+            if (restriction != null) {
+                restrictions.computeIfAbsent(restriction.onClass, c -> new ArrayList<>()).add(restriction);
+            }
+        });
+    }
+
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    // At most limit violations are written
+    public void setLimit(long limit) {
+        this.limit = limit;
+    }
+
+    public List<Restriction> restrictions() {
+        List<Restriction> all = new ArrayList<>();
+        restrictions.values().forEach(all::addAll);
+        return all;
+    }
+
+    // Writes the violations to out and returns how many there are
+    public long validate(Writer out) throws IOException {
+        metrics.start("validate");
+        long start = System.nanoTime();
+        Set<Node> resources = new LinkedHashSet<>();
+        GraphUtil.listSubjects(graph, Node.ANY, Node.ANY).forEachRemaining(resources::add);
+        GraphUtil.listObjects(graph, Node.ANY, Node.ANY).forEachRemaining(o -> {
+            if (!o.isLiteral()) resources.add(o);
+        });
+        List<Node> nodes = new ArrayList<>(resources);
+        metrics.rows(nodes.size());
+
+        AtomicLong written = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> chunks = new ArrayList<>();
+            for (int from = 0; from < nodes.size(); from += chunkSize) {
+                List<Node> chunk = nodes.subList(from, Math.min(nodes.size(), from + chunkSize));
+                chunks.add(executor.submit(() -> {
+                    StringBuilder violations = new StringBuilder();
+                    for (Node node : chunk) {
+                        check(node, violations);
+                    }
+                    write(out, violations, written);
+                    return null;
+                }));
+            }
+            for (Future<Void> chunk : chunks) {
+                chunk.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+        out.flush();
+
+        long violations = violations();
+        metrics.end(0);
+        metrics.set("violations", violations);
+        System.out.printf("Checked %d restrictions on %d resources in %.1fs: %d violations%n",
+                restrictions().size(), nodes.size(), (System.nanoTime() - start) / 1e9, violations);
+        return violations;
+    }
+
+    public long violations() {
+        long violations = 0;
+        for (Restriction restriction : restrictions()) {
+            violations += restriction.violations.sum();
+        }
+        return violations;
+    }
+
+    // ---------------------
+    // -------Checks--------
+    // ---------------------
+
+    // Lines of the chunk go out in one piece, so they are not interleaved with those of other chunks
+    private synchronized void write(Writer out, StringBuilder violations, AtomicLong written) throws IOException {
+        int end = 0;
+        while (end < violations.length() && written.get() < limit) {
+            end = violations.indexOf("\n", end) + 1;
+            written.incrementAndGet();
+        }
+        out.append(violations, 0, end);
+    }
+
+    private void check(Node node, StringBuilder violations) {
+        Map<Node, Set<Node>> values = new HashMap<>();
+        Set<Node> types = describe(node, values);
+        for (Node type : types) {
+            for (Restriction restriction : restrictions.getOrDefault(type, Collections.emptyList())) {
+                restriction.checked.increment();
+                Set<Node> found = values.getOrDefault(restriction.property, Collections.emptySet());
+                boolean valid;
+                switch (restriction.kind) {
+                    case MIN:
+                        valid = found.size() >= restriction.cardinality;
+                        break;
+                    case MAX:
+                        valid = found.size() <= restriction.cardinality;
+                        break;
+                    case EXACTLY:
+                        valid = found.size() == restriction.cardinality;
+                        break;
+                    default:
+                        valid = true;
+                        for (Node value : found) {
+                            if (!hasType(value, restriction.filler)) {
+                                valid = false;
+                                break;
+                            }
+                        }
+                }
+                if (!valid) {
+                    restriction.violations.increment();
+                    violations.append(node).append('\t').append(restriction).append('\t').append(found.size());
+                    for (Node value : found) {
+                        violations.append('\t').append(value);
+                    }
+                    violations.append('\n');
+                }
+            }
+        }
+    }
+
+    // The types of node and, when values is given, the values of its properties, asserted or inferred
+    private Set<Node> describe(Node node, Map<Node, Set<Node>> values) {
+        List<Triple> local = graph.find(node, Node.ANY, Node.ANY).toList();
+        // rdf:type triples only type their subject, and classes are the object of many of them
+        graph.find(Node.ANY, Node.ANY, node).forEachRemaining(t -> {
+            if (!t.getPredicate().equals(TYPE)) local.add(t);
+        });
+        local.addAll(rules.infer(local));
+
+        Set<Node> types = new HashSet<>();
+        for (Triple triple : local) {
+            if (!triple.getSubject().equals(node)) continue;
+            if (triple.getPredicate().equals(TYPE)) {
+                types.add(triple.getObject());
+            } else if (values != null) {
+                values.computeIfAbsent(triple.getPredicate(), p -> new HashSet<>()).add(triple.getObject());
+            }
+        }
+        return types;
+    }
+
+    private boolean hasType(Node value, Node filler) {
+        if (value.isLiteral()) {
+            return filler.equals(RDFS.Literal.asNode()) || filler.getURI().equals(value.getLiteralDatatypeURI());
+        }
+        return valueTypes.computeIfAbsent(value, v -> describe(v, null)).contains(filler);
+    }
+
+    // The restriction that superClass is, if it is a cardinality or allValuesFrom one on a named property
+    private static Restriction restriction(Graph schema, Node onClass, Node superClass) {
+        if (superClass.isLiteral() || !schema.contains(superClass, TYPE, OWL.Restriction.asNode())) return null;
+        Node property = object(schema, superClass, OWL.onProperty.asNode());
+        if (property == null || !property.isURI()) return null;
+        Node value;
+        if ((value = object(schema, superClass, OWL.cardinality.asNode())) != null) {
+            return new Restriction(onClass, property, Kind.EXACTLY, cardinality(value), null);
+        }
+        if ((value = object(schema, superClass, OWL.minCardinality.asNode())) != null) {
+            return new Restriction(onClass, property, Kind.MIN, cardinality(value), null);
+        }
+        if ((value = object(schema, superClass, OWL.maxCardinality.asNode())) != null) {
+            return new Restriction(onClass, property, Kind.MAX, cardinality(value), null);
+        }
+        if ((value = object(schema, superClass, OWL.allValuesFrom.asNode())) != null && value.isURI()) {
+            return new Restriction(onClass, property, Kind.ONLY, 0, value);
+        }
+        return null;
+    }
+
+    private static Node object(Graph schema, Node subject, Node predicate) {
+        Iterator<Triple> triples = schema.find(subject, predicate, Node.ANY);
+        return triples.hasNext() ? triples.next().getObject() : null;
+    }
+
+    private static int cardinality(Node value) {
+        return Integer.parseInt(value.getLiteralLexicalForm().trim());
+    }
+
+    private static String localName(Node node) {
+        String uri = node.getURI();
+        return uri.substring(Math.max(uri.lastIndexOf('#'), uri.lastIndexOf('/')) + 1);
+    }
+
+    // ---------------------
+    // -------Summary-------
+    // ---------------------
+
+    public void printSummary() {
+        System.out.printf("%-60s %12s %12s%n", "Restriction", "Checked", "Violations");
+        for (Restriction restriction : restrictions()) {
+            System.out.printf("%-60s %12d %12d%n", restriction, restriction.checked.sum(), restriction.violations.sum());
+        }
+    }
+
+    public JsonObject toJson() {
+        JsonObject report = new JsonObject();
+        report.put("violations", violations());
+        JsonArray restrictionArray = new JsonArray();
+        for (Restriction restriction : restrictions()) {
+            JsonObject r = new JsonObject();
+            r.put("class", restriction.onClass.getURI());
+            r.put("property", restriction.property.getURI());
+            r.put("kind", restriction.kind.keyword);
+            if (restriction.kind == Kind.ONLY) {
+                r.put("filler", restriction.filler.getURI());
+            } else {
+                r.put("cardinality", restriction.cardinality);
+            }
+            r.put("checked", restriction.checked.sum());
+            r.put("violations", restriction.violations.sum());
+            restrictionArray.add(r);
+        }
+        report.put("restrictions", restrictionArray);
+        return report;
+    }
+
+    public void writeReport(String path) throws IOException {
+        try (OutputStream out = new FileOutputStream(path)) {
+            JSON.write(out, toJson());
+        }
+    }
+}
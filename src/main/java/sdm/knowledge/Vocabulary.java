@@ -0,0 +1,110 @@
+package sdm.knowledge;
+
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.vocabulary.OWL;
+import org.apache.jena.vocabulary.RDF;
+
+// TBox classes and properties resolved to graph nodes once, so the builders do not look them up per row.
+public class Vocabulary {
+
+    public final Node type = RDF.type.asNode();
+
+    // Classes
+    public final Node author = uri(TBox.Classes.author);
+    public final Node chair = uri(TBox.Classes.chair);
+    public final Node editor = uri(TBox.Classes.editor);
+    public final Node submission = uri(TBox.Classes.submission);
+    public final Node journal = uri(TBox.Classes.journal);
+    public final Node proceedings = uri(TBox.Classes.proceedings);
+    public final Node volume = uri(TBox.Classes.volume);
+    public final Node revision = uri(TBox.Classes.revision);
+    public final Node field = uri(TBox.Classes.field);
+    public final Node location = uri(TBox.Classes.location);
+    public final Node[] paperSubclasses = {
+            uri(TBox.Classes.fullPaper),
+            uri(TBox.Classes.shortPaper),
+            uri(TBox.Classes.demoPaper),
+            uri(TBox.Classes.poster)
+    };
+    public final Node[] conferenceSubclasses = {
+            uri(TBox.Classes.regularConference),
+            uri(TBox.Classes.workshop),
+            uri(TBox.Classes.symposium),
+            uri(TBox.Classes.expertGroup)
+    };
+
+    // Object properties
+    public final Node authors = uri(TBox.ObjectProperties.authors);
+    public final Node cites = uri(TBox.ObjectProperties.cites);
+    public final Node submittedAs = uri(TBox.ObjectProperties.submittedAs);
+    public final Node submittedTo = uri(TBox.ObjectProperties.submittedTo);
+    public final Node publishedIn = uri(TBox.ObjectProperties.publishedIn);
+    public final Node belongsTo = uri(TBox.ObjectProperties.belongsTo);
+    public final Node managedBy = uri(TBox.ObjectProperties.managedBy);
+    public final Node assigns = uri(TBox.ObjectProperties.assigns);
+    public final Node doneBy = uri(TBox.ObjectProperties.doneBy);
+    public final Node reviews = uri(TBox.ObjectProperties.reviews);
+    public final Node paperRelatedTo = uri(TBox.ObjectProperties.paperRelatedTo);
+    public final Node venueRelatedTo = uri(TBox.ObjectProperties.venueRelatedTo);
+    public final Node takesPlaceIn = uri(TBox.ObjectProperties.takesPlaceIn);
+
+    // Data properties
+    public final Node name = uri(TBox.DataProperties.name);
+    public final Node title = uri(TBox.DataProperties.title);
+    public final Node doi = uri(TBox.DataProperties.doi);
+    public final Node paperAbstract = uri(TBox.DataProperties.paperAbstract);
+    public final Node accepted = uri(TBox.DataProperties.accepted);
+    public final Node reviewText = uri(TBox.DataProperties.reviewText);
+    public final Node revisionDateStart = uri(TBox.DataProperties.revisionDateStart);
+    public final Node revisionDateEnd = uri(TBox.DataProperties.revisionDateEnd);
+    public final Node submissionDate = uri(TBox.DataProperties.submissionDate);
+    public final Node submissionAcceptedDate = uri(TBox.DataProperties.submissionAcceptedDate);
+    public final Node year = uri(TBox.DataProperties.year);
+    public final Node volumeNumber = uri(TBox.DataProperties.volumeNumber);
+    public final Node venueName = uri(TBox.DataProperties.venueName);
+    public final Node keyword = uri(TBox.DataProperties.keyword);
+
+    // Values
+    public final Node acceptedTrue = NodeFactory.createLiteral("true", XSDDatatype.XSDboolean);
+    public final Node barcelona = uri(TBox.DBPO + "Barcelona");
+
+    // Shared by the builders of a run
+    public final NodeCache nodes = new NodeCache(NodeCache.DEFAULT_SIZE);
+
+    public Vocabulary() {
+    }
+
+    // Checks that every class and property used by the builders is declared in the given TBox
+    public Vocabulary(Graph tbox) {
+        for (Node c : new Node[]{author, chair, editor, submission, journal, proceedings, volume, revision, field, location}) {
+            require(tbox, c, OWL.Class.asNode());
+        }
+        for (Node c : paperSubclasses) {
+            require(tbox, c, OWL.Class.asNode());
+        }
+        for (Node c : conferenceSubclasses) {
+            require(tbox, c, OWL.Class.asNode());
+        }
+        for (Node p : new Node[]{authors, cites, submittedAs, submittedTo, publishedIn, belongsTo, managedBy, assigns,
+                doneBy, reviews, paperRelatedTo, venueRelatedTo, takesPlaceIn}) {
+            require(tbox, p, OWL.ObjectProperty.asNode());
+        }
+        for (Node p : new Node[]{name, title, doi, paperAbstract, accepted, reviewText, revisionDateStart, revisionDateEnd,
+                submissionDate, submissionAcceptedDate, year, volumeNumber, venueName, keyword}) {
+            require(tbox, p, OWL.DatatypeProperty.asNode());
+        }
+    }
+
+    private static void require(Graph tbox, Node node, Node kind) {
+        if (!tbox.contains(node, RDF.type.asNode(), kind)) {
+            throw new IllegalStateException("TBox does not declare " + node.getURI() + " as " + kind.getLocalName());
+        }
+    }
+
+    private static Node uri(String iri) {
+        return NodeFactory.createURI(iri);
+    }
+}
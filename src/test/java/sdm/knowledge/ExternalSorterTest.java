@@ -0,0 +1,58 @@
+package sdm.knowledge;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ExternalSorterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void mergesInPassesAndKeepsTheOrderOfEqualKeys() throws Exception {
+        File directory = folder.newFolder("spill");
+        List<String[]> records = new ArrayList<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 200; i++) {
+            records.add(new String[]{"key" + random.nextInt(20), Integer.toString(i)});
+        }
+        List<String[]> stable = new ArrayList<>(records);
+        stable.sort(Comparator.comparing(r -> r[0]));
+        List<List<String>> expected = toLists(stable.iterator());
+
+        try (ExternalSorter sorter = new ExternalSorter(2, 3, 4, directory)) {
+            for (String[] record : records) {
+                sorter.add(record);
+            }
+            assertEquals(expected, toLists(sorter.sorted()));
+            assertEquals(67, sorter.getRuns());
+            // 67 runs -> 17 -> 5 -> 2, merging groups of up to 4 runs and keeping a group of one as it is
+            assertEquals(17 + 4 + 1, sorter.getMerged());
+            assertEquals(2, directory.list().length);
+            assertEquals(expected, toLists(sorter.sorted()));
+        }
+        assertEquals(0, directory.list().length);
+    }
+
+    @Test
+    public void sortsInMemoryWithoutRuns() throws Exception {
+        try (ExternalSorter sorter = new ExternalSorter(2, 10, folder.getRoot())) {
+            sorter.add("b", "1");
+            sorter.add("a", "2");
+            sorter.add("b", "3");
+            assertEquals(0, sorter.getRuns());
+            assertEquals(List.of(List.of("a", "2"), List.of("b", "1"), List.of("b", "3")), toLists(sorter.sorted()));
+        }
+    }
+
+    private static List<List<String>> toLists(Iterator<String[]> records) {
+        List<List<String>> list = new ArrayList<>();
+        records.forEachRemaining(r -> list.add(Arrays.asList(r)));
+        return list;
+    }
+}
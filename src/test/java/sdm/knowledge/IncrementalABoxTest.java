@@ -0,0 +1,133 @@
+package sdm.knowledge;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class IncrementalABoxTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Paper 0 cites paper 3 and is reviewed by an author of paper 3, so both can only be linked once the second
+    // batch adds paper 3. The review of paper 2 is read before paper 2 is known.
+    private static final List<Map<String, String>> PAPERS = List.of(
+            paper(0, "Journal A", "Journal Article"),
+            paper(1, "Conference B", "Conference Paper"),
+            paper(2, "Journal A", "Journal Article"),
+            paper(3, "Conference B", "Conference Paper"));
+    private static final List<Map<String, String>> CITATIONS = List.of(
+            Map.of("Paper", doi(0), "Citation", doi(1)),
+            Map.of("Paper", doi(0), "Citation", doi(3)),
+            Map.of("Paper", doi(1), "Citation", doi(0)),
+            Map.of("Paper", doi(2), "Citation", doi(0)),
+            Map.of("Paper", doi(3), "Citation", doi(1)));
+    private static final List<Map<String, String>> REVIEWS = List.of(
+            review(0, "300", "True"),
+            review(1, "201", "True"),
+            review(2, "100", "True"),
+            review(1, "200", "False"),
+            review(3, "101", "True"));
+    private static final List<Map<String, String>> REVIEWERS = List.of(
+            Map.of("Paper", doi(0), "Reviewers", "300;101"),
+            Map.of("Paper", doi(1), "Reviewers", "100"),
+            Map.of("Paper", doi(2), "Reviewers", "300"),
+            Map.of("Paper", doi(3), "Reviewers", "101;200"));
+
+    @Test
+    public void twoBatchesGiveTheFullBuild() throws Exception {
+        Graph full = GraphFactory.createGraphMem();
+        new StreamingABox(StreamRDFLib.graph(full), new ABoxState(7), new Vocabulary()).populate(source(4, 5, 5, 4));
+
+        Graph batches = GraphFactory.createGraphMem();
+        ABoxState state = new ABoxState(7);
+        new StreamingABox(StreamRDFLib.graph(batches), state, new Vocabulary()).populate(source(2, 3, 3, 2));
+        assertEquals(1, state.pendingCitations());
+        assertEquals(1, state.pendingReviewers());
+
+        File saved = folder.newFile("state.bin");
+        state.save(saved.getPath());
+        ABoxState loaded = ABoxState.load(saved.getPath());
+        assertEquals(1, loaded.pendingCitations());
+        new IncrementalABox(StreamRDFLib.graph(batches), loaded, new Vocabulary()).populate(source(4, 5, 5, 4));
+
+        assertEquals(0, loaded.pendingCitations());
+        assertEquals(0, loaded.pendingReviewers());
+        assertEquals(count(full, TBox.ObjectProperties.cites), count(batches, TBox.ObjectProperties.cites));
+        assertEquals(count(full, TBox.ObjectProperties.doneBy), count(batches, TBox.ObjectProperties.doneBy));
+        assertTrue(full.isIsomorphicWith(batches));
+    }
+
+    @Test
+    public void reviewersThatAreNotAuthorsStayPending() throws Exception {
+        Graph graph = GraphFactory.createGraphMem();
+        ABoxState state = new ABoxState(7);
+        new StreamingABox(StreamRDFLib.graph(graph), state, new Vocabulary()).populate(source(2, 3, 3, 2));
+
+        assertFalse(state.isReviewed(doi(0)));
+        assertTrue(state.hasPendingReviewers(doi(0)));
+        assertTrue(state.isReviewed(doi(1)));
+    }
+
+    // The first rows of every input
+    private static ABoxSource source(int papers, int citations, int reviews, int reviewers) {
+        return new ABoxSource() {
+            @Override
+            public Rows papers() {
+                return ABoxSource.of(PAPERS.subList(0, papers));
+            }
+
+            @Override
+            public Rows citations() {
+                return ABoxSource.of(CITATIONS.subList(0, citations));
+            }
+
+            @Override
+            public Rows reviews() {
+                return ABoxSource.of(REVIEWS.subList(0, reviews));
+            }
+
+            @Override
+            public Rows reviewers() {
+                return ABoxSource.of(REVIEWERS.subList(0, reviewers));
+            }
+        };
+    }
+
+    private static long count(Graph graph, String property) {
+        return graph.find(Node.ANY, NodeFactory.createURI(property), Node.ANY).toList().size();
+    }
+
+    private static String doi(int paper) {
+        return "10.1000/paper." + paper;
+    }
+
+    // Paper i is written by authors 100 + i and 200 + i, and by author 300 for paper 3
+    private static Map<String, String> paper(int i, String venue, String type) {
+        Map<String, String> row = new HashMap<>();
+        row.put("Authors", "Author " + i + ", Other " + i + (i == 3 ? ", Third" : ""));
+        row.put("Author(s) ID", (100 + i) + ";" + (200 + i) + (i == 3 ? ";300" : ""));
+        row.put("Title", "Title " + i);
+        row.put("Year", Integer.toString(2018 + i));
+        row.put("Source title", venue);
+        row.put("Volume", Integer.toString(10 + i));
+        row.put("DOI", doi(i));
+        row.put("Abstract", "Abstract " + i);
+        row.put("Index Keywords", "keyword " + i + "; keyword " + (i + 1));
+        row.put("Document Type", type);
+        return row;
+    }
+
+    private static Map<String, String> review(int paper, String reviewer, String decision) {
+        return Map.of("Paper", doi(paper), "Reviewer", reviewer, "Decision", decision, "Review", "Review of " + paper + " by " + reviewer);
+    }
+}